@@ -0,0 +1,155 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.graylog2.gelfclient.GelfMessage;
+import org.graylog2.gelfclient.GelfTransports;
+import org.graylog2.gelfclient.transport.GelfTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pmw.tinylog.Level;
+import org.pmw.tinylog.LogEntry;
+import org.pmw.tinylog.writers.LogEntryValue;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of encoding and handing a log entry to the transport in {@link GelfWriter}.
+ * <p>
+ * The benchmark lives in the package of {@link GelfWriter} in order to call the package-private
+ * {@code write(GelfTransport, LogEntry)} directly, so no network I/O is involved. Run it with {@code -prof gc} to
+ * see the allocation rate of the hot path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GelfWriterBenchmark {
+    private static final int STACK_DEPTH = 100;
+    private static final int STATIC_FIELDS = 32;
+
+    /**
+     * {@code FRAME} uses the allocation-free encoder (e. g. for the UDP transport), {@code MESSAGE} builds a
+     * {@link GelfMessage} (e. g. for gelfclient's TCP transport).
+     */
+    @Param({"FRAME", "MESSAGE"})
+    public String transportType;
+
+    private GelfTransport transport;
+    private GelfWriter writer;
+    private GelfWriter staticFieldsWriter;
+    private LogEntry minimalEntry;
+    private LogEntry fullEntry;
+    private LogEntry exceptionEntry;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        transport = "FRAME".equals(transportType) ? new NoopFrameTransport(blackhole) : new NoopTransport(blackhole);
+
+        writer = new GelfWriter("localhost", 12201, GelfTransports.UDP, "benchmark",
+                EnumSet.allOf(LogEntryValue.class), Collections.<String, Object>emptyMap());
+
+        final Map<String, Object> staticFields = new HashMap<>(STATIC_FIELDS);
+        for (int i = 0; i < STATIC_FIELDS; i++) {
+            staticFields.put("field" + i, i % 2 == 0 ? "value" + i : (Object) i);
+        }
+        staticFieldsWriter = new GelfWriter("localhost", 12201, GelfTransports.UDP, "benchmark",
+                EnumSet.noneOf(LogEntryValue.class), staticFields);
+
+        final Date date = new Date();
+        final Thread thread = Thread.currentThread();
+        minimalEntry = new LogEntry(date, null, null, null, null, null, -1, Level.INFO,
+                "Test message", null);
+        fullEntry = new LogEntry(date, "12345", thread, "com.example.Service", "handleRequest",
+                "Service.java", 42, Level.INFO, "Test message with \"quotes\" and unicode äöü", null);
+        exceptionEntry = new LogEntry(date, "12345", thread, "com.example.Service", "handleRequest",
+                "Service.java", 42, Level.ERROR, "Test message", deepException(STACK_DEPTH));
+    }
+
+    private static Throwable deepException(final int depth) {
+        if (depth == 0) {
+            return new IllegalStateException("BOOM!", new IllegalArgumentException("Root cause"));
+        }
+        return deepException(depth - 1);
+    }
+
+    @Benchmark
+    public void writeMinimal() throws Exception {
+        writer.write(transport, minimalEntry);
+    }
+
+    @Benchmark
+    public void writeAllLogEntryValues() throws Exception {
+        writer.write(transport, fullEntry);
+    }
+
+    @Benchmark
+    public void writeException() throws Exception {
+        writer.write(transport, exceptionEntry);
+    }
+
+    @Benchmark
+    public void writeManyStaticFields() throws Exception {
+        staticFieldsWriter.write(transport, minimalEntry);
+    }
+
+    private static class NoopTransport implements GelfTransport {
+        private final Blackhole blackhole;
+
+        private NoopTransport(final Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void send(final GelfMessage message) {
+            blackhole.consume(message);
+        }
+
+        @Override
+        public boolean trySend(final GelfMessage message) {
+            blackhole.consume(message);
+            return true;
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+
+    private static final class NoopFrameTransport extends NoopTransport implements GelfFrameTransport {
+        private final Blackhole blackhole;
+
+        private NoopFrameTransport(final Blackhole blackhole) {
+            super(blackhole);
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void send(final byte[] frame, final int offset, final int length) {
+            blackhole.consume(frame);
+            blackhole.consume(length);
+        }
+
+        @Override
+        public boolean trySend(final byte[] frame, final int offset, final int length) {
+            blackhole.consume(frame);
+            blackhole.consume(length);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.graylog2.gelfclient.transport.GelfTransport;
+import org.pmw.tinylog.InternalLogger;
+import org.pmw.tinylog.LogEntry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decouples the logging threads from encoding and sending GELF messages.
+ * <p>
+ * Logging threads only put the {@link LogEntry} into a preallocated {@link RingBuffer}, a dedicated consumer thread
+ * takes the entries from the ring buffer and hands them to {@link GelfWriter#write(GelfTransport, LogEntry, OverflowPolicy)}. As the
+ * {@link OverflowPolicy} is applied when enqueueing log entries, the consumer thread always waits for the transport.
+ * <p>
+ * When idle, the consumer thread spins and yields for a short while and then parks until a logging thread enqueues the
+ * next log entry and wakes it up, so that an idle dispatcher doesn't wake up periodically.
+ */
+final class AsyncDispatcher implements Runnable {
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+    // Only a safety net, the consumer thread is woken up by the logging threads
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50L);
+
+    private final GelfWriter writer;
+    private final GelfTransport transport;
+    private final RingBuffer<LogEntry> ringBuffer;
+    private final OverflowPolicy overflowPolicy;
+    private final OverflowPolicy consumerPolicy = OverflowPolicy.block();
+    private final PendingCounter pending = new PendingCounter();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean waiting;
+
+    /**
+     * Construct a new AsyncDispatcher instance.
+     *
+     * @param writer         the writer encoding and sending the log entries
+     * @param transport      the transport to send GELF messages with
+     * @param bufferSize     the number of slots in the ring buffer
+     * @param overflowPolicy the behaviour if the ring buffer is full
+     */
+    AsyncDispatcher(final GelfWriter writer,
+                    final GelfTransport transport,
+                    final int bufferSize,
+                    final OverflowPolicy overflowPolicy) {
+        this.writer = writer;
+        this.transport = transport;
+        this.ringBuffer = new RingBuffer<>(bufferSize);
+        this.overflowPolicy = overflowPolicy;
+        this.thread = new Thread(this, "tinylog-gelf-dispatcher");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Enqueue a log entry. If the ring buffer is full, the {@link OverflowPolicy} decides whether to wait for a free
+     * slot, to drop the log entry or to drop the oldest log entry in the ring buffer.
+     *
+     * @param logEntry the log entry to enqueue
+     * @return {@code true} if the log entry has been enqueued, {@code false} if it has been dropped
+     * @throws InterruptedException if interrupted while waiting for a free slot
+     */
+    boolean enqueue(final LogEntry logEntry) throws InterruptedException {
+        if (offer(logEntry)) {
+            return true;
+        }
+
+        if (overflowPolicy.blocks(logEntry.getLevel())) {
+            int tries = 0;
+            while (!offer(logEntry)) {
+                tries = backOff(tries);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            return true;
+        }
+
+        switch (overflowPolicy.getType()) {
+            case DROP_OLDEST:
+                do {
+                    if (ringBuffer.poll() != null) {
+                        overflowPolicy.dropped();
+                        pending.completed(1);
+                    }
+                } while (!offer(logEntry));
+                return true;
+            case BLOCK_WITH_TIMEOUT:
+                final long deadline = System.nanoTime() + overflowPolicy.getTimeoutNanos();
+                int tries = 0;
+                while (System.nanoTime() - deadline < 0L) {
+                    tries = backOff(tries);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    if (offer(logEntry)) {
+                        return true;
+                    }
+                }
+                overflowPolicy.dropped();
+                return false;
+            default:
+                overflowPolicy.dropped();
+                return false;
+        }
+    }
+
+    private boolean offer(final LogEntry logEntry) {
+        if (ringBuffer.offer(logEntry)) {
+            pending.submitted();
+            if (waiting) {
+                LockSupport.unpark(thread);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    int size() {
+        return ringBuffer.size();
+    }
+
+    /**
+     * Wait until all log entries which have been enqueued before calling this method have been handed to the
+     * transport.
+     *
+     * @param timeoutMillis the maximum time to wait in milliseconds
+     * @return the number of log entries which are still outstanding
+     * @throws InterruptedException if interrupted while waiting
+     */
+    long flush(final long timeoutMillis) throws InterruptedException {
+        return pending.await(timeoutMillis);
+    }
+
+    /**
+     * Stop the consumer thread after all enqueued log entries have been dispatched. If the consumer thread hasn't
+     * finished within the timeout, it is interrupted and the remaining log entries are discarded.
+     *
+     * @param timeoutMillis the maximum time to wait for the consumer thread in milliseconds, must be positive
+     * @throws InterruptedException if interrupted while waiting for the consumer thread
+     */
+    void stop(final long timeoutMillis) throws InterruptedException {
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join(timeoutMillis);
+        if (thread.isAlive()) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        int tries = 0;
+        while (running) {
+            final LogEntry logEntry = ringBuffer.poll();
+            if (logEntry == null) {
+                tries = idle(tries);
+            } else {
+                tries = 0;
+                dispatch(logEntry);
+            }
+        }
+
+        LogEntry logEntry;
+        while (!thread.isInterrupted() && (logEntry = ringBuffer.poll()) != null) {
+            dispatch(logEntry);
+        }
+    }
+
+    private void dispatch(final LogEntry logEntry) {
+        try {
+            writer.write(transport, logEntry, consumerPolicy);
+        } catch (InterruptedException e) {
+            // Nobody else is using the consumer thread, so an interrupt can only mean that it should stop
+            running = false;
+            thread.interrupt();
+        } catch (Exception e) {
+            InternalLogger.error(e, "Couldn't send GELF message");
+        } finally {
+            pending.completed(1);
+        }
+    }
+
+    /**
+     * Wait for the next log entry, spinning first, then yielding and finally parking the consumer thread until a
+     * logging thread wakes it up.
+     *
+     * @param tries the number of unsuccessful tries so far
+     * @return the new number of unsuccessful tries
+     */
+    private int idle(final int tries) {
+        if (tries < YIELD_TRIES) {
+            return backOff(tries);
+        }
+
+        waiting = true;
+        // Check again after announcing the wait, as logging threads only wake up the consumer thread if it's waiting
+        if (running && ringBuffer.isEmpty()) {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        waiting = false;
+        return tries;
+    }
+
+    /**
+     * Wait a little, spinning first, then yielding and finally parking the current thread.
+     *
+     * @param tries the number of unsuccessful tries so far
+     * @return the new number of unsuccessful tries
+     */
+    static int backOff(final int tries) {
+        if (tries < SPIN_TRIES) {
+            return tries + 1;
+        } else if (tries < YIELD_TRIES) {
+            Thread.yield();
+            return tries + 1;
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+            return tries;
+        }
+    }
+}
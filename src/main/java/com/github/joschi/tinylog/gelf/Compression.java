@@ -0,0 +1,181 @@
+package com.github.joschi.tinylog.gelf;
+
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * The compression of GELF messages sent over UDP.
+ * <p>
+ * Supported settings are {@code NONE} (default), {@code GZIP} and {@code ZLIB}, optionally followed by the
+ * compression level and the minimum size of messages to compress in bytes, e. g. {@code GZIP(6, 512)}. Messages
+ * smaller than the minimum size are sent uncompressed.
+ * <p>
+ * {@link Deflater} instances are pooled and reused, so compressing a message doesn't allocate a new one.
+ */
+final class Compression {
+    enum Type {
+        NONE, GZIP, ZLIB
+    }
+
+    private static final int POOL_SIZE = 16;
+    private static final byte[] GZIP_HEADER = {
+            0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    private final Type type;
+    private final int level;
+    private final int minimumSize;
+    private final RingBuffer<Context> pool = new RingBuffer<>(POOL_SIZE);
+
+    private Compression(final Type type, final int level, final int minimumSize) {
+        this.type = type;
+        this.level = level;
+        this.minimumSize = minimumSize;
+    }
+
+    static Compression none() {
+        return new Compression(Type.NONE, Deflater.DEFAULT_COMPRESSION, 0);
+    }
+
+    /**
+     * Parse a compression setting like {@code GZIP}, {@code GZIP(9)} or {@code ZLIB(6, 512)}.
+     *
+     * @param compression the textual representation of the compression, {@code null} selects {@code NONE}
+     * @return the compression
+     * @throws IllegalArgumentException if the compression setting is invalid
+     */
+    static Compression parse(final String compression) {
+        if (null == compression || compression.trim().isEmpty()) {
+            return none();
+        }
+
+        final String trimmed = compression.trim().toUpperCase(Locale.ENGLISH);
+        final int parameterStart = trimmed.indexOf('(');
+        final String name = parameterStart == -1 ? trimmed : trimmed.substring(0, parameterStart).trim();
+        final String[] parameters;
+        if (parameterStart == -1) {
+            parameters = new String[0];
+        } else if (trimmed.endsWith(")")) {
+            parameters = trimmed.substring(parameterStart + 1, trimmed.length() - 1).split(",");
+        } else {
+            throw new IllegalArgumentException("Invalid compression " + compression);
+        }
+
+        final Type type = Type.valueOf(name);
+        if (type == Type.NONE && parameters.length > 0 || parameters.length > 2) {
+            throw new IllegalArgumentException("Unexpected parameter for compression " + compression);
+        }
+
+        final int level = parameters.length > 0 ? Integer.parseInt(parameters[0].trim()) : Deflater.DEFAULT_COMPRESSION;
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        }
+
+        final int minimumSize = parameters.length > 1 ? Integer.parseInt(parameters[1].trim()) : 0;
+        if (minimumSize < 0) {
+            throw new IllegalArgumentException("Invalid minimum size for compression " + minimumSize);
+        }
+
+        return new Compression(type, level, minimumSize);
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    int getLevel() {
+        return level;
+    }
+
+    int getMinimumSize() {
+        return minimumSize;
+    }
+
+    /**
+     * @param length the size of the GELF message in bytes
+     * @return {@code true} if a message of the given size should be compressed
+     */
+    boolean appliesTo(final int length) {
+        return type != Type.NONE && length >= minimumSize;
+    }
+
+    /**
+     * Compress the given GELF message and append the result to the target buffer.
+     *
+     * @param source the buffer containing the GELF message
+     * @param offset the start of the GELF message in the buffer
+     * @param length the size of the GELF message in bytes
+     * @param target the buffer to write the compressed GELF message to
+     */
+    void compress(final byte[] source, final int offset, final int length, final JsonBuffer target) {
+        Context context = pool.poll();
+        if (context == null) {
+            context = new Context(type, level);
+        }
+
+        try {
+            final Deflater deflater = context.deflater;
+            if (type == Type.GZIP) {
+                target.writeBytes(GZIP_HEADER);
+            }
+
+            deflater.setInput(source, offset, length);
+            deflater.finish();
+            target.writeDeflated(deflater);
+
+            if (type == Type.GZIP) {
+                final CRC32 crc = context.crc;
+                crc.update(source, offset, length);
+                writeIntLittleEndian(target, (int) crc.getValue());
+                writeIntLittleEndian(target, length);
+            }
+        } finally {
+            context.reset();
+            if (!pool.offer(context)) {
+                context.end();
+            }
+        }
+    }
+
+    private static void writeIntLittleEndian(final JsonBuffer target, final int value) {
+        target.writeByte(value);
+        target.writeByte(value >>> 8);
+        target.writeByte(value >>> 16);
+        target.writeByte(value >>> 24);
+    }
+
+    /**
+     * Release the native resources of all pooled {@link Deflater} instances.
+     */
+    void close() {
+        Context context;
+        while ((context = pool.poll()) != null) {
+            context.end();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return type == Type.NONE ? type.toString() : type + "(" + level + ", " + minimumSize + ")";
+    }
+
+    private static final class Context {
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+
+        private Context(final Type type, final int level) {
+            // GZIP uses raw deflate data wrapped in its own header and trailer
+            this.deflater = new Deflater(level, type == Type.GZIP);
+        }
+
+        private void reset() {
+            deflater.reset();
+            crc.reset();
+        }
+
+        private void end() {
+            deflater.end();
+        }
+    }
+}
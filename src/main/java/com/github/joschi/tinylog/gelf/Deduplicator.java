@@ -0,0 +1,313 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.pmw.tinylog.Level;
+import org.pmw.tinylog.LogEntry;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses identical log entries which are written within a time window.
+ * <p>
+ * Log entries are identified by a fingerprint made of the level, the message, the source class and method and the
+ * class of the exception. The first log entry of a window is written as usual, all further log entries with the same
+ * fingerprint are suppressed and only counted. Once the window has closed, the last suppressed log entry is reported
+ * together with the number of suppressed log entries, see {@link #pollExpired()}.
+ * <p>
+ * The fingerprints are kept in a bounded LRU cache which is split into several stripes with a lock each, so that
+ * concurrent logging threads rarely contend for the same lock. Fingerprints which are evicted from the cache are
+ * reported immediately.
+ * <p>
+ * The reported log entries are sent like any other log entry, e. g. through the asynchronous dispatcher. As
+ * {@link LogEntry} is final and can't carry the repeat count, it is looked up with {@link #repeatCount(LogEntry)}
+ * when the log entry is encoded.
+ */
+final class Deduplicator {
+    private static final int STRIPES = 16;
+
+    private final long windowNanos;
+    private final Stripe[] stripes;
+    private final Queue<Repeated> expired = new ConcurrentLinkedQueue<>();
+    // Keyed by identity, as LogEntry doesn't override equals(); weak, so that dropped log entries don't leak
+    private final Map<LogEntry, Long> repeatCounts = Collections.synchronizedMap(new WeakHashMap<LogEntry, Long>());
+    private final AtomicLong nextSweep;
+
+    /**
+     * @param windowMillis the time window in milliseconds, {@code 0} disables deduplication
+     * @param cacheSize    the maximum number of fingerprints to keep
+     */
+    Deduplicator(final long windowMillis, final int cacheSize) {
+        if (windowMillis < 0L || cacheSize < 1) {
+            throw new IllegalArgumentException("Invalid deduplication window " + windowMillis + " ms or cache size "
+                    + cacheSize);
+        }
+
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        final int stripeCount = Math.min(STRIPES, cacheSize);
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe((cacheSize + stripeCount - 1) / stripeCount);
+        }
+        this.nextSweep = new AtomicLong(System.nanoTime() + windowNanos);
+    }
+
+    static Deduplicator disabled() {
+        return new Deduplicator(0L, 1);
+    }
+
+    boolean isEnabled() {
+        return windowNanos > 0L;
+    }
+
+    /**
+     * Check whether a log entry with the same fingerprint has been written within the current window.
+     *
+     * @param logEntry the log entry to check
+     * @return {@code true} if the log entry should be suppressed, {@code false} if it should be written
+     */
+    boolean isDuplicate(final LogEntry logEntry) {
+        if (windowNanos == 0L) {
+            return false;
+        }
+
+        final int hash = Fingerprint.hash(logEntry);
+        final Stripe stripe = stripes[(hash & Integer.MAX_VALUE) % stripes.length];
+        final long now = System.nanoTime();
+        synchronized (stripe) {
+            // Only a new fingerprint is allocated, lookups use the reusable probe of the stripe
+            final Fingerprint probe = stripe.probe.set(logEntry, hash);
+            final Record record = stripe.get(probe);
+            if (record == null) {
+                stripe.put(new Fingerprint(probe), new Record(now));
+                return false;
+            }
+
+            if (now - record.windowStart < windowNanos) {
+                record.last = logEntry;
+                record.repeats++;
+                return true;
+            }
+
+            report(record);
+            record.reset(now);
+            return false;
+        }
+    }
+
+    /**
+     * Move all fingerprints whose window has closed into the queue of expired log entries. As this requires locking
+     * all stripes, it is only done once per window unless {@code force} is {@code true}.
+     *
+     * @param force {@code true} to close all windows, e. g. when closing the writer
+     */
+    void sweep(final boolean force) {
+        if (windowNanos == 0L) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        final long next = nextSweep.get();
+        if (!force && now - next < 0L) {
+            return;
+        }
+        if (!nextSweep.compareAndSet(next, now + windowNanos) && !force) {
+            return;
+        }
+
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                final Iterator<Record> iterator = stripe.values().iterator();
+                while (iterator.hasNext()) {
+                    final Record record = iterator.next();
+                    if (force || now - record.windowStart >= windowNanos) {
+                        iterator.remove();
+                        report(record);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Take the next log entry whose repetitions have been suppressed. Its repeat count is remembered until it is
+     * looked up with {@link #repeatCount(LogEntry)}.
+     *
+     * @return the next log entry whose repetitions have been suppressed or {@code null} if there is none
+     */
+    Repeated pollExpired() {
+        final Repeated repeated = expired.poll();
+        if (null != repeated) {
+            repeatCounts.put(repeated.logEntry, repeated.repeatCount);
+        }
+        return repeated;
+    }
+
+    /**
+     * Look up and forget the repeat count of a log entry which has been returned by {@link #pollExpired()}.
+     *
+     * @param logEntry the log entry to encode
+     * @return the number of suppressed log entries or {@code 0} if the log entry isn't a repeated one
+     */
+    long repeatCount(final LogEntry logEntry) {
+        if (windowNanos == 0L) {
+            return 0L;
+        }
+
+        final Long repeatCount = repeatCounts.remove(logEntry);
+        return null == repeatCount ? 0L : repeatCount;
+    }
+
+    private void report(final Record record) {
+        if (record.repeats > 0L) {
+            expired.offer(new Repeated(record.last, record.repeats));
+        }
+    }
+
+    /**
+     * A log entry which has been suppressed one or more times.
+     */
+    static final class Repeated {
+        private final LogEntry logEntry;
+        private final long repeatCount;
+
+        private Repeated(final LogEntry logEntry, final long repeatCount) {
+            this.logEntry = logEntry;
+            this.repeatCount = repeatCount;
+        }
+
+        /**
+         * @return the last suppressed log entry
+         */
+        LogEntry getLogEntry() {
+            return logEntry;
+        }
+
+        /**
+         * @return the number of suppressed log entries
+         */
+        long getRepeatCount() {
+            return repeatCount;
+        }
+    }
+
+    private static final class Record {
+        private long windowStart;
+        private LogEntry last;
+        private long repeats;
+
+        private Record(final long windowStart) {
+            this.windowStart = windowStart;
+        }
+
+        private void reset(final long windowStart) {
+            this.windowStart = windowStart;
+            this.last = null;
+            this.repeats = 0L;
+        }
+    }
+
+    private final class Stripe extends LinkedHashMap<Fingerprint, Record> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final Fingerprint probe = new Fingerprint();
+
+        private Stripe(final int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Fingerprint, Record> eldest) {
+            if (size() > capacity) {
+                report(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class Fingerprint {
+        private Level level;
+        private String message;
+        private String className;
+        private String methodName;
+        private Class<?> exceptionClass;
+        private int hash;
+
+        private Fingerprint() {
+        }
+
+        private Fingerprint(final Fingerprint other) {
+            this.level = other.level;
+            this.message = other.message;
+            this.className = other.className;
+            this.methodName = other.methodName;
+            this.exceptionClass = other.exceptionClass;
+            this.hash = other.hash;
+        }
+
+        private Fingerprint set(final LogEntry logEntry, final int hash) {
+            this.level = logEntry.getLevel();
+            this.message = logEntry.getMessage();
+            this.className = logEntry.getClassName();
+            this.methodName = logEntry.getMethodName();
+            this.exceptionClass = exceptionClass(logEntry);
+            this.hash = hash;
+            return this;
+        }
+
+        static int hash(final LogEntry logEntry) {
+            int h = logEntry.getLevel().hashCode();
+            h = 31 * h + hashCode(logEntry.getMessage());
+            h = 31 * h + hashCode(logEntry.getClassName());
+            h = 31 * h + hashCode(logEntry.getMethodName());
+            h = 31 * h + hashCode(exceptionClass(logEntry));
+            return h;
+        }
+
+        private static Class<?> exceptionClass(final LogEntry logEntry) {
+            @SuppressWarnings("all")
+            final Throwable throwable = logEntry.getException();
+            return throwable == null ? null : throwable.getClass();
+        }
+
+        private static int hashCode(final Object o) {
+            return o == null ? 0 : o.hashCode();
+        }
+
+        private static boolean equal(final Object a, final Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Fingerprint)) {
+                return false;
+            }
+
+            final Fingerprint that = (Fingerprint) o;
+            return hash == that.hash
+                    && level == that.level
+                    && exceptionClass == that.exceptionClass
+                    && equal(message, that.message)
+                    && equal(className, that.className)
+                    && equal(methodName, that.methodName);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.pmw.tinylog.InternalLogger;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * A FIFO queue of encoded GELF messages stored in rotating segment files.
+ * <p>
+ * Every segment file has a fixed size and contains a sequence of records, each consisting of the length of the
+ * GELF message as 32-bit integer followed by the message itself. A length of {@code 0} marks the end of the
+ * records, a negative length marks a record which has already been consumed. As the message is written before its
+ * length, a partially written record is never visible, and records which have been consumed before a restart of
+ * the application are not replayed again.
+ * <p>
+ * If the total size of all segments would exceed the configured quota, the oldest segment is deleted together with
+ * all of its unconsumed records. The segment files are kept open and accessed with plain reads and writes instead of
+ * being memory-mapped, so that the disk space of a deleted segment is released immediately, and so that it can be
+ * deleted on Windows at all.
+ * <p>
+ * The segments are not forced to disk, so they survive a crash of the application, but not necessarily a crash of
+ * the operating system.
+ */
+final class DiskSpool {
+    private static final String SEGMENT_PREFIX = "gelf-spool-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int RECORD_HEADER_SIZE = 4;
+    private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+    private static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int SEGMENTS_PER_QUOTA = 8;
+
+    private final File directory;
+    private final long maxBytes;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private long nextSegmentId;
+    private long frames;
+    private long evictedFrames;
+    private Segment peekedSegment;
+
+    /**
+     * Construct a new DiskSpool instance, recovering all unconsumed records from existing segment files in the
+     * given directory.
+     *
+     * @param directory the directory for the segment files, will be created if it doesn't exist
+     * @param maxBytes  the maximum total size of all segment files in bytes
+     * @throws IOException if the directory or the existing segment files couldn't be read
+     */
+    DiskSpool(final File directory, final long maxBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Couldn't create spool directory " + directory);
+        }
+
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.segmentSize = (int) Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, maxBytes / SEGMENTS_PER_QUOTA));
+        this.maxSegments = (int) Math.max(2L, maxBytes / segmentSize);
+        recover();
+    }
+
+    private void recover() throws IOException {
+        final File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(final File dir, final String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null) {
+            throw new IOException("Couldn't list spool directory " + directory);
+        }
+
+        final long[] ids = new long[files.length];
+        for (int i = 0; i < files.length; i++) {
+            final String name = files[i].getName();
+            ids[i] = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        }
+        Arrays.sort(ids);
+
+        for (long id : ids) {
+            final Segment segment = Segment.open(segmentFile(id));
+            nextSegmentId = id + 1;
+            if (segment.frames == 0) {
+                segment.delete();
+            } else {
+                segments.addLast(segment);
+                frames += segment.frames;
+            }
+        }
+    }
+
+    private File segmentFile(final long id) {
+        return new File(directory, SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Append a GELF message, evicting the oldest segment if the quota would be exceeded otherwise.
+     *
+     * @return {@code true} if the message has been appended, {@code false} if it is larger than a segment
+     * @throws IOException if a new segment file couldn't be created
+     */
+    synchronized boolean append(final byte[] frame, final int offset, final int length) throws IOException {
+        if (RECORD_HEADER_SIZE + length > segmentSize) {
+            return false;
+        }
+
+        Segment tail = segments.peekLast();
+        if (tail == null || !tail.fits(length)) {
+            dropConsumedSegments();
+            if (segments.size() >= maxSegments) {
+                evict();
+            }
+            tail = Segment.create(segmentFile(nextSegmentId), segmentSize);
+            nextSegmentId++;
+            segments.addLast(tail);
+        }
+
+        tail.append(frame, offset, length);
+        frames++;
+        return true;
+    }
+
+    private void evict() {
+        final Segment oldest = segments.pollFirst();
+        if (oldest == peekedSegment) {
+            peekedSegment = null;
+        }
+        frames -= oldest.frames;
+        evictedFrames += oldest.frames;
+        oldest.delete();
+        InternalLogger.warn("Evicted " + oldest.frames + " spooled GELF messages, the spool quota of " + maxBytes
+                + " bytes has been exceeded");
+    }
+
+    private void dropConsumedSegments() {
+        // The tail segment is kept as long as it has room for more records
+        Segment head = segments.peekFirst();
+        while (head != null && head.frames == 0 && head != peekedSegment
+                && (head != segments.peekLast() || !head.fits(0))) {
+            segments.pollFirst().delete();
+            head = segments.peekFirst();
+        }
+    }
+
+    /**
+     * Copy the oldest unconsumed GELF message into the target buffer without removing it.
+     *
+     * @param target the buffer to append the GELF message to
+     * @return {@code true} if a GELF message has been copied, {@code false} if the spool is empty
+     */
+    synchronized boolean peek(final JsonBuffer target) {
+        final Iterator<Segment> iterator = segments.iterator();
+        while (iterator.hasNext()) {
+            final Segment segment = iterator.next();
+            if (segment.frames > 0) {
+                try {
+                    segment.peek(target);
+                    peekedSegment = segment;
+                    return true;
+                } catch (IOException e) {
+                    InternalLogger.warn(e, "Couldn't read spool segment " + segment.file + ", discarding "
+                            + segment.frames + " spooled GELF messages");
+                    iterator.remove();
+                    frames -= segment.frames;
+                    evictedFrames += segment.frames;
+                    segment.delete();
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Mark the GELF message returned by the last call of {@link #peek(JsonBuffer)} as consumed. Does nothing if its
+     * segment has been evicted in the meantime.
+     */
+    synchronized void remove() {
+        final Segment segment = peekedSegment;
+        peekedSegment = null;
+        if (segment != null && segment.frames > 0) {
+            try {
+                segment.consume();
+            } catch (IOException e) {
+                InternalLogger.warn(e, "Couldn't mark spooled GELF message in " + segment.file
+                        + " as consumed, it will be replayed again after a restart");
+            }
+            frames--;
+            dropConsumedSegments();
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        return frames == 0L;
+    }
+
+    /**
+     * @return the number of unconsumed GELF messages
+     */
+    synchronized long size() {
+        return frames;
+    }
+
+    /**
+     * @return the number of GELF messages which have been evicted because the quota has been exceeded
+     */
+    synchronized long getEvictedFrames() {
+        return evictedFrames;
+    }
+
+    int getSegmentSize() {
+        return segmentSize;
+    }
+
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Release all segments. Unconsumed records stay on disk and are recovered by the next instance.
+     */
+    synchronized void close() {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+        peekedSegment = null;
+    }
+
+    private static final class Segment {
+        private final File file;
+        private final RandomAccessFile data;
+        private final int capacity;
+        private int readPosition;
+        private int readLength;
+        private int writePosition;
+        private int frames;
+
+        private Segment(final File file, final RandomAccessFile data, final int capacity) {
+            this.file = file;
+            this.data = data;
+            this.capacity = capacity;
+        }
+
+        static Segment create(final File file, final int size) throws IOException {
+            final RandomAccessFile data = new RandomAccessFile(file, "rw");
+            try {
+                data.setLength(size);
+            } catch (IOException e) {
+                data.close();
+                throw e;
+            }
+            return new Segment(file, data, size);
+        }
+
+        static Segment open(final File file) throws IOException {
+            final RandomAccessFile data = new RandomAccessFile(file, "rw");
+            final Segment segment = new Segment(file, data, (int) Math.min(Integer.MAX_VALUE, data.length()));
+            try {
+                segment.scan();
+            } catch (IOException e) {
+                data.close();
+                throw e;
+            }
+            return segment;
+        }
+
+        private void scan() throws IOException {
+            int position = 0;
+            readPosition = -1;
+            while (position + RECORD_HEADER_SIZE <= capacity) {
+                final int length = lengthAt(position);
+                if (length == 0 || position + RECORD_HEADER_SIZE + Math.abs(length) > capacity) {
+                    break;
+                }
+                if (length > 0) {
+                    if (readPosition == -1) {
+                        readPosition = position;
+                    }
+                    frames++;
+                }
+                position += RECORD_HEADER_SIZE + Math.abs(length);
+            }
+            writePosition = position;
+            if (readPosition == -1) {
+                readPosition = position;
+            }
+        }
+
+        private int lengthAt(final int position) throws IOException {
+            data.seek(position);
+            return data.readInt();
+        }
+
+        boolean fits(final int length) {
+            return writePosition + RECORD_HEADER_SIZE + length <= capacity;
+        }
+
+        void append(final byte[] frame, final int offset, final int length) throws IOException {
+            data.seek(writePosition + RECORD_HEADER_SIZE);
+            data.write(frame, offset, length);
+            data.seek(writePosition);
+            data.writeInt(length);
+            writePosition += RECORD_HEADER_SIZE + length;
+            frames++;
+        }
+
+        void peek(final JsonBuffer target) throws IOException {
+            int length;
+            while ((length = lengthAt(readPosition)) < 0) {
+                readPosition += RECORD_HEADER_SIZE - length;
+            }
+            target.writeBytes(data, length);
+            readLength = length;
+        }
+
+        /**
+         * Mark the record returned by the last call of {@link #peek(JsonBuffer)} as consumed.
+         */
+        void consume() throws IOException {
+            final int position = readPosition;
+            readPosition += RECORD_HEADER_SIZE + readLength;
+            frames--;
+            data.seek(position);
+            data.writeInt(-readLength);
+        }
+
+        void close() {
+            try {
+                data.close();
+            } catch (IOException e) {
+                InternalLogger.warn(e, "Couldn't close spool segment " + file);
+            }
+        }
+
+        void delete() {
+            close();
+            if (!file.delete() && file.exists()) {
+                InternalLogger.warn("Couldn't delete spool segment " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.pmw.tinylog.InternalLogger;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically resolves the hostnames of the GELF-compatible servers again and redirects the transports if a server
+ * has moved to a new address, e. g. because the IP addresses of a load balancer have been rotated.
+ * <p>
+ * Hostnames are only resolved on a background thread, never while sending GELF messages. If a hostname can't be
+ * resolved, the transport keeps using the last known address. Note that the JVM caches DNS lookups itself, see the
+ * {@code networkaddress.cache.ttl} security property.
+ */
+final class DnsRefresher implements Runnable {
+    private final List<Server> servers = new ArrayList<>();
+    private final long intervalMillis;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Construct a new DnsRefresher instance.
+     *
+     * @param intervalMillis the time between two lookups of every hostname in milliseconds
+     */
+    DnsRefresher(final long intervalMillis) {
+        if (intervalMillis < 1L) {
+            throw new IllegalArgumentException("Invalid DNS refresh interval " + intervalMillis + " ms");
+        }
+
+        this.intervalMillis = intervalMillis;
+        this.thread = new Thread(this, "tinylog-gelf-dns");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Add a transport whose server should be resolved periodically. Must be called before {@link #start()}.
+     *
+     * @param remoteAddress the current address of the server, its hostname is resolved again
+     * @param transport     the transport to redirect if the address changes
+     */
+    void add(final InetSocketAddress remoteAddress, final RedirectableTransport transport) {
+        servers.add(new Server(remoteAddress, transport));
+    }
+
+    boolean isEmpty() {
+        return servers.isEmpty();
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                // The refresher is being stopped
+                break;
+            }
+            refresh();
+        }
+    }
+
+    /**
+     * Resolve all hostnames once and redirect the transports of the servers whose address has changed.
+     */
+    void refresh() {
+        for (Server server : servers) {
+            if (!running) {
+                return;
+            }
+            server.refresh();
+        }
+    }
+
+    private static final class Server {
+        private final String hostname;
+        private final int port;
+        private final RedirectableTransport transport;
+        private InetSocketAddress address;
+        private boolean failing;
+
+        private Server(final InetSocketAddress address, final RedirectableTransport transport) {
+            // Doesn't trigger a reverse lookup, unlike getHostName()
+            this.hostname = address.getHostString();
+            this.port = address.getPort();
+            this.transport = transport;
+            this.address = address;
+        }
+
+        private void refresh() {
+            final InetSocketAddress resolved = new InetSocketAddress(hostname, port);
+            if (resolved.isUnresolved()) {
+                if (!failing) {
+                    failing = true;
+                    InternalLogger.warn("Couldn't resolve GELF server " + hostname + ", keep sending to " + address);
+                }
+                return;
+            }
+
+            failing = false;
+            if (!resolved.equals(address)) {
+                address = resolved;
+                transport.redirect(resolved);
+            }
+        }
+    }
+}
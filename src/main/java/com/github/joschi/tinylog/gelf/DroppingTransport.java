@@ -0,0 +1,13 @@
+package com.github.joschi.tinylog.gelf;
+
+/**
+ * A transport which may drop GELF messages after accepting them, e. g. because they can't be sent at all.
+ * <p>
+ * {@link GelfWriter} includes these messages in the number of lost messages which it reports when it is closed.
+ */
+interface DroppingTransport {
+    /**
+     * @return the number of GELF messages which have been accepted but dropped
+     */
+    long getDroppedMessages();
+}
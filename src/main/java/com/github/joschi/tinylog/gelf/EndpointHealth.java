@@ -0,0 +1,177 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.pmw.tinylog.InternalLogger;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the health of a single GELF-compatible server with a simple circuit breaker.
+ * <p>
+ * The circuit is {@link State#CLOSED closed} as long as messages can be sent to the server. After
+ * {@link #FAILURE_THRESHOLD} consecutive failures it is {@link State#OPEN opened} and the server should not be used
+ * any more. Once the retry delay has elapsed, a single caller of {@link #tryProbe()} may use the server again
+ * ({@link State#HALF_OPEN half-open}). The next success closes the circuit, the next failure opens it again.
+ */
+public final class EndpointHealth {
+    /**
+     * The state of the circuit breaker.
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Number of consecutive failures which open the circuit. A single failure may just be a stale connection.
+     */
+    static final int FAILURE_THRESHOLD = 2;
+
+    private final long retryDelayNanos;
+    private final AtomicLong connections = new AtomicLong();
+
+    private volatile InetSocketAddress remoteAddress;
+    private volatile State state = State.CLOSED;
+    private volatile int consecutiveFailures;
+    private volatile long connectLatencyNanos = -1L;
+    private long retryAt;
+
+    /**
+     * @param remoteAddress    the address of the GELF-compatible server
+     * @param retryDelayMillis the time to wait before an unavailable server is used again in milliseconds
+     */
+    EndpointHealth(final InetSocketAddress remoteAddress, final long retryDelayMillis) {
+        this.remoteAddress = remoteAddress;
+        this.retryDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, retryDelayMillis));
+    }
+
+    /**
+     * Record that messages have been sent successfully.
+     */
+    void success() {
+        if (state == State.CLOSED && consecutiveFailures == 0) {
+            return;
+        }
+
+        synchronized (this) {
+            consecutiveFailures = 0;
+            if (state != State.CLOSED) {
+                state = State.CLOSED;
+                InternalLogger.warn("GELF server " + remoteAddress + " is available again");
+            }
+        }
+    }
+
+    /**
+     * Record that a connection has been established successfully.
+     *
+     * @param latencyNanos the time it took to establish the connection in nanoseconds
+     */
+    void connected(final long latencyNanos) {
+        connectLatencyNanos = latencyNanos;
+        connections.incrementAndGet();
+        success();
+    }
+
+    /**
+     * Record that messages couldn't be sent or a connection couldn't be established.
+     */
+    synchronized void failure() {
+        consecutiveFailures++;
+        if (state == State.CLOSED && consecutiveFailures < FAILURE_THRESHOLD) {
+            return;
+        }
+
+        if (state == State.CLOSED) {
+            InternalLogger.warn("GELF server " + remoteAddress + " is unavailable after " + consecutiveFailures
+                    + " consecutive failures");
+        }
+        state = State.OPEN;
+        retryAt = System.nanoTime() + retryDelayNanos;
+    }
+
+    /**
+     * @return {@code true} if the circuit is closed and the server can be used, {@code false} otherwise
+     */
+    boolean isAvailable() {
+        return state == State.CLOSED;
+    }
+
+    /**
+     * Check whether the server should be probed with the next message. This is the case if the circuit isn't closed
+     * and the retry delay has elapsed. Only one caller per retry delay is allowed to probe the server.
+     *
+     * @return {@code true} if the caller should use the server, {@code false} otherwise
+     */
+    boolean tryProbe() {
+        if (state == State.CLOSED) {
+            return false;
+        }
+
+        synchronized (this) {
+            final long now = System.nanoTime();
+            if (state == State.CLOSED || now - retryAt < 0L) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            retryAt = now + retryDelayNanos;
+            return true;
+        }
+    }
+
+    /**
+     * Returns the current state of the circuit breaker.
+     *
+     * @return the state of the circuit breaker
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the number of failures since messages have been sent successfully for the last time.
+     *
+     * @return the number of consecutive failures
+     */
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * Returns the time it took to establish the last connection to the server.
+     *
+     * @return the connect latency in nanoseconds, {@code -1} if unknown
+     */
+    public long getConnectLatencyNanos() {
+        return connectLatencyNanos;
+    }
+
+    /**
+     * Returns the number of connections which have been established to the server, including reconnects.
+     *
+     * @return the number of connections, always {@code 0} for connectionless transports
+     */
+    public long getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * Returns the address of the GELF-compatible server.
+     *
+     * @return the address of the server
+     */
+    public InetSocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    void setRemoteAddress(final InetSocketAddress remoteAddress) {
+        this.remoteAddress = remoteAddress;
+    }
+
+    @Override
+    public String toString() {
+        return remoteAddress + " " + state + " (" + consecutiveFailures + " consecutive failures)";
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.graylog2.gelfclient.transport.GelfTransport;
+
+/**
+ * A {@link GelfTransport} which queues GELF messages and is able to wait until they have been sent.
+ * <p>
+ * If the transport used by {@link GelfWriter} implements this interface, {@link GelfWriter#flush()} waits for the
+ * transport. Transports sending GELF messages on the calling thread don't need to implement it.
+ */
+public interface FlushableGelfTransport extends GelfTransport {
+    /**
+     * Wait until all GELF messages which have been accepted before calling this method have been written to the
+     * network, or until the timeout has elapsed.
+     *
+     * @param timeoutMillis the maximum time to wait in milliseconds
+     * @return the number of GELF messages which are still outstanding, {@code 0} if all messages have been sent
+     * @throws InterruptedException if interrupted while waiting
+     */
+    long flush(long timeoutMillis) throws InterruptedException;
+
+    /**
+     * Returns the number of GELF messages which have been accepted but not yet written to the network.
+     *
+     * @return the number of pending messages
+     */
+    long getPendingMessages();
+}
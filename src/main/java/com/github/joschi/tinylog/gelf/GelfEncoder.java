@@ -0,0 +1,325 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.graylog2.gelfclient.GelfMessage;
+import org.graylog2.gelfclient.GelfMessageLevel;
+import org.pmw.tinylog.Level;
+import org.pmw.tinylog.LogEntry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Encoder writing GELF 1.1 messages as UTF-8 encoded JSON directly into a {@link JsonBuffer}.
+ * <p>
+ * The encoder produces the same fields as {@link GelfWriter} does with the {@link org.graylog2.gelfclient.GelfMessageBuilder}
+ * but doesn't allocate any intermediate objects for the regular (non-exceptional) case, apart from the small lookup key
+ * for the cached source location. The fields describing the thread and the source location are encoded once and
+ * then copied from {@link ThreadFieldsCache} and {@link SourceLocationCache}.
+ * <p>
+ * The size of every string field and of the whole message can be limited. Strings are truncated while they are being
+ * encoded, so an oversized log message only costs as much as the part of it which is actually sent. The potentially
+ * large fields ({@code short_message}, {@code _exceptionStackTrace} and {@code full_message}, in this order of
+ * priority) are written last and share whatever is left of the maximum message size. Truncated messages carry an
+ * additional {@code _truncated} field.
+ */
+final class GelfEncoder {
+    private static final byte[] VERSION = "{\"version\":\"1.1\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TIMESTAMP = JsonBuffer.fieldName("timestamp");
+    private static final byte[] HOST = JsonBuffer.fieldName("host");
+    private static final byte[] SHORT_MESSAGE = JsonBuffer.fieldName("short_message");
+    private static final byte[] LEVEL = JsonBuffer.fieldName("level");
+    private static final byte[] FULL_MESSAGE = JsonBuffer.fieldName("full_message");
+    private static final byte[] PROCESS_ID = JsonBuffer.fieldName("_processId");
+    private static final byte[] EXCEPTION_CLASS = JsonBuffer.fieldName("_exceptionClass");
+    private static final byte[] EXCEPTION_MESSAGE = JsonBuffer.fieldName("_exceptionMessage");
+    private static final byte[] EXCEPTION_STACK_TRACE = JsonBuffer.fieldName("_exceptionStackTrace");
+    private static final byte[] REPEAT_COUNT = JsonBuffer.fieldName("_repeat_count");
+    private static final byte[] TRUNCATED = JsonBuffer.fieldName("_truncated");
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final int INITIAL_HEADER_SIZE = 256;
+    private static final int MAX_CACHED_SOURCE_LOCATIONS = 4096;
+
+    private final LocalHostname hostname;
+    private final byte[] staticFields;
+    private volatile Header header;
+    private final StackTraceRenderer stackTraceRenderer;
+    private final ThreadFieldsCache threadFields;
+    private final SourceLocationCache sourceLocations;
+    private final int maxFieldLength;
+    private final int maxMessageSize;
+
+    /**
+     * Construct a new GelfEncoder instance.
+     *
+     * @param hostname           the hostname of the application
+     * @param staticFields       additional static fields for the GELF messages
+     * @param stackTraceRenderer the renderer for stack traces of exceptions
+     */
+    GelfEncoder(final String hostname, final Map<String, Object> staticFields, final StackTraceRenderer stackTraceRenderer) {
+        this(hostname, staticFields, stackTraceRenderer, 0, 0);
+    }
+
+    /**
+     * Construct a new GelfEncoder instance.
+     *
+     * @param hostname           the hostname of the application
+     * @param staticFields       additional static fields for the GELF messages
+     * @param stackTraceRenderer the renderer for stack traces of exceptions
+     * @param maxFieldLength     the maximum size of a string field in bytes, {@code 0} disables the limit
+     * @param maxMessageSize     the maximum size of a GELF message in bytes, {@code 0} disables the limit
+     */
+    GelfEncoder(final String hostname,
+                final Map<String, Object> staticFields,
+                final StackTraceRenderer stackTraceRenderer,
+                final int maxFieldLength,
+                final int maxMessageSize) {
+        this(LocalHostname.of(hostname), staticFields, stackTraceRenderer, maxFieldLength, maxMessageSize);
+    }
+
+    /**
+     * Construct a new GelfEncoder instance.
+     * <p>
+     * The static fields never change and the hostname only changes once, when it has been looked up in the
+     * background. Their JSON representation is therefore computed once (and again after the lookup) and copied
+     * verbatim into every encoded message.
+     *
+     * @param hostname           the hostname of the application
+     * @param staticFields       additional static fields for the GELF messages
+     * @param stackTraceRenderer the renderer for stack traces of exceptions
+     * @param maxFieldLength     the maximum size of a string field in bytes, {@code 0} disables the limit
+     * @param maxMessageSize     the maximum size of a GELF message in bytes, {@code 0} disables the limit; the
+     *                           hostname, the static fields and all other fixed-size fields are always written
+     */
+    GelfEncoder(final LocalHostname hostname,
+                final Map<String, Object> staticFields,
+                final StackTraceRenderer stackTraceRenderer,
+                final int maxFieldLength,
+                final int maxMessageSize) {
+        if (maxFieldLength < 0 || maxMessageSize < 0) {
+            throw new IllegalArgumentException("Invalid maximum field length " + maxFieldLength
+                    + " or maximum message size " + maxMessageSize);
+        }
+
+        final JsonBuffer buffer = new JsonBuffer(INITIAL_HEADER_SIZE);
+        for (Map.Entry<String, Object> staticField : staticFields.entrySet()) {
+            buffer.writeBytes(JsonBuffer.fieldName(additionalFieldName(staticField.getKey())));
+            writeValue(staticField.getValue(), buffer);
+        }
+        this.hostname = hostname;
+        this.staticFields = buffer.toByteArray();
+        this.stackTraceRenderer = stackTraceRenderer;
+        this.maxFieldLength = maxFieldLength == 0 ? Integer.MAX_VALUE : maxFieldLength;
+        this.threadFields = new ThreadFieldsCache(this.maxFieldLength);
+        this.sourceLocations = new SourceLocationCache(MAX_CACHED_SOURCE_LOCATIONS, this.maxFieldLength);
+        this.maxMessageSize = maxMessageSize == 0 ? Integer.MAX_VALUE : maxMessageSize;
+    }
+
+    private byte[] header() {
+        final String name = hostname.get();
+        Header current = header;
+        // LocalHostname always returns the same instance until the lookup has completed, so identity is enough
+        if (current == null || current.hostname != name) {
+            // Concurrent callers compute the same header, so there's no need to synchronize
+            final JsonBuffer buffer = new JsonBuffer(INITIAL_HEADER_SIZE);
+            buffer.writeBytes(VERSION);
+            buffer.writeBytes(HOST);
+            buffer.writeString(name);
+            buffer.writeBytes(staticFields);
+            current = new Header(name, buffer.toByteArray());
+            header = current;
+        }
+        return current.bytes;
+    }
+
+    private static String additionalFieldName(final String key) {
+        return key.startsWith("_") ? key : "_" + key;
+    }
+
+    /**
+     * Encode the given {@link LogEntry} as GELF message.
+     *
+     * @param logEntry the log entry to encode
+     * @param buffer   the buffer to append the GELF message to
+     */
+    void encode(final LogEntry logEntry, final JsonBuffer buffer) {
+        encode(logEntry, 0L, buffer);
+    }
+
+    /**
+     * Encode the given {@link LogEntry} as GELF message.
+     *
+     * @param logEntry    the log entry to encode
+     * @param repeatCount the number of identical log entries collapsed into this one, {@code 0} omits the field
+     * @param buffer      the buffer to append the GELF message to
+     * @return {@code true} if the GELF message has been truncated because of the size limits, {@code false} otherwise
+     */
+    boolean encode(final LogEntry logEntry, final long repeatCount, final JsonBuffer buffer) {
+        final String message = logEntry.getRenderedLogEntry() == null ? logEntry.getMessage() : logEntry.getRenderedLogEntry();
+        final int start = buffer.size();
+        boolean truncated = false;
+
+        buffer.writeBytes(header());
+        buffer.writeBytes(TIMESTAMP);
+        buffer.writeTimestamp(logEntry.getDate().getTime());
+        buffer.writeBytes(LEVEL);
+        buffer.writeLong(toGelfMessageLevel(logEntry.getLevel()).getNumericLevel());
+
+        final String processId = logEntry.getProcessId();
+        if (null != processId) {
+            buffer.writeBytes(PROCESS_ID);
+            truncated |= writeString(processId, maxFieldLength, buffer);
+        }
+
+        final Thread thread = logEntry.getThread();
+        if (null != thread) {
+            truncated |= threadFields.write(thread, buffer);
+        }
+
+        truncated |= sourceLocations.write(logEntry.getClassName(), logEntry.getMethodName(), logEntry.getFilename(),
+                logEntry.getLineNumber(), buffer);
+
+        @SuppressWarnings("all")
+        final Throwable throwable = logEntry.getException();
+        if (null != throwable) {
+            buffer.writeBytes(EXCEPTION_CLASS);
+            truncated |= writeString(throwable.getClass().getCanonicalName(), maxFieldLength, buffer);
+            buffer.writeBytes(EXCEPTION_MESSAGE);
+            truncated |= writeString(throwable.getMessage(), maxFieldLength, buffer);
+        }
+
+        if (repeatCount > 0L) {
+            buffer.writeBytes(REPEAT_COUNT);
+            buffer.writeLong(repeatCount);
+        }
+
+        // The large fields come last, so that they can be truncated to what is left of the maximum message size.
+        // Every limit reserves space for the quotes, the fields still to be written and the closing brace.
+        final int trailer = TRUNCATED.length + TRUE.length + 1;
+        final int exceptionFields = null == throwable ? 0 : EXCEPTION_STACK_TRACE.length + 2 + FULL_MESSAGE.length + 2;
+        buffer.writeBytes(SHORT_MESSAGE);
+        truncated |= writeString(message, limit(start, 2 + exceptionFields + trailer, buffer), buffer);
+
+        if (null != throwable) {
+            buffer.writeBytes(EXCEPTION_STACK_TRACE);
+            buffer.writeByte('"');
+            final int stackTraceOffset = buffer.size();
+            stackTraceRenderer.render(throwable, buffer);
+            truncated |= buffer.truncate(stackTraceOffset, limit(start, 1 + FULL_MESSAGE.length + 2 + trailer, buffer));
+            final int stackTraceLength = buffer.size() - stackTraceOffset;
+            buffer.writeByte('"');
+
+            buffer.writeBytes(FULL_MESSAGE);
+            buffer.writeByte('"');
+            final int fullMessageOffset = buffer.size();
+            final int fullMessageLimit = limit(start, 1 + trailer, buffer);
+            buffer.writeStringContent(String.valueOf(message), fullMessageLimit);
+            buffer.writeStringContent("\n\n");
+            // The stack trace has already been rendered, so just copy it
+            buffer.writeBytes(buffer.array(), stackTraceOffset, stackTraceLength);
+            truncated |= buffer.truncate(fullMessageOffset, fullMessageLimit);
+            buffer.writeByte('"');
+        }
+
+        if (truncated) {
+            buffer.writeBytes(TRUNCATED);
+            buffer.writeBytes(TRUE);
+        }
+
+        buffer.writeByte('}');
+        return truncated;
+    }
+
+    /**
+     * Returns the maximum size of the next string field, given the size of the message so far and the number of bytes
+     * which have to be reserved for the rest of the message.
+     */
+    private int limit(final int start, final int reserve, final JsonBuffer buffer) {
+        final long remaining = (long) maxMessageSize - (buffer.size() - start) - reserve;
+        return (int) Math.max(0L, Math.min(maxFieldLength, remaining));
+    }
+
+    static boolean writeString(final String value, final int maxBytes, final JsonBuffer buffer) {
+        if (value == null) {
+            buffer.writeNull();
+            return false;
+        }
+
+        buffer.writeByte('"');
+        final boolean truncated = buffer.writeStringContent(value, maxBytes);
+        buffer.writeByte('"');
+        return truncated;
+    }
+
+    /**
+     * Encode the given {@link GelfMessage}.
+     *
+     * @param message the GELF message to encode
+     * @param buffer  the buffer to append the GELF message to
+     */
+    static void encode(final GelfMessage message, final JsonBuffer buffer) {
+        buffer.writeBytes(VERSION);
+        buffer.writeBytes(TIMESTAMP);
+        buffer.writeTimestamp((long) (message.getTimestamp() * 1000d));
+        buffer.writeBytes(HOST);
+        buffer.writeString(message.getHost());
+        buffer.writeBytes(SHORT_MESSAGE);
+        buffer.writeString(message.getMessage());
+        if (message.getLevel() != null) {
+            buffer.writeBytes(LEVEL);
+            buffer.writeLong(message.getLevel().getNumericLevel());
+        }
+        if (message.getFullMessage() != null) {
+            buffer.writeBytes(FULL_MESSAGE);
+            buffer.writeString(message.getFullMessage());
+        }
+        for (Map.Entry<String, Object> field : message.getAdditionalFields().entrySet()) {
+            buffer.writeBytes(JsonBuffer.fieldName(additionalFieldName(field.getKey())));
+            writeValue(field.getValue(), buffer);
+        }
+        buffer.writeByte('}');
+    }
+
+    private static void writeValue(final Object value, final JsonBuffer buffer) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            buffer.writeLong(((Number) value).longValue());
+        } else if (value instanceof Number && isFinite((Number) value)) {
+            buffer.writeStringContent(value.toString());
+        } else {
+            buffer.writeString(value == null ? null : value.toString());
+        }
+    }
+
+    private static boolean isFinite(final Number value) {
+        final double d = value.doubleValue();
+        return !Double.isNaN(d) && !Double.isInfinite(d);
+    }
+
+    static GelfMessageLevel toGelfMessageLevel(final Level level) {
+        switch (level) {
+            case TRACE:
+            case DEBUG:
+                return GelfMessageLevel.DEBUG;
+            case INFO:
+                return GelfMessageLevel.INFO;
+            case WARNING:
+                return GelfMessageLevel.WARNING;
+            case ERROR:
+                return GelfMessageLevel.ERROR;
+            default:
+                throw new IllegalArgumentException("Invalid log level " + level);
+        }
+    }
+
+    /**
+     * The JSON representation of the version, the hostname and the static fields.
+     */
+    private static final class Header {
+        private final String hostname;
+        private final byte[] bytes;
+
+        private Header(final String hostname, final byte[] bytes) {
+            this.hostname = hostname;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.graylog2.gelfclient.transport.GelfTransport;
+
+/**
+ * A {@link GelfTransport} which is able to send GELF messages which have already been encoded as JSON.
+ * <p>
+ * If the transport used by {@link GelfWriter} implements this interface, log entries are encoded directly into a
+ * reusable buffer instead of being converted into a {@link org.graylog2.gelfclient.GelfMessage} first.
+ */
+public interface GelfFrameTransport extends GelfTransport {
+    /**
+     * Send an encoded GELF message. Blocks until the message has been accepted by the transport.
+     * <p>
+     * The contents of {@code frame} may be reused by the caller as soon as this method returns, so implementations
+     * must copy the message if they don't send it immediately.
+     *
+     * @param frame  the buffer containing the UTF-8 encoded JSON representation of the GELF message
+     * @param offset the start offset of the GELF message in {@code frame}
+     * @param length the length of the GELF message in bytes
+     * @throws InterruptedException if interrupted while waiting for the transport to accept the message
+     */
+    void send(byte[] frame, int offset, int length) throws InterruptedException;
+
+    /**
+     * Try to send an encoded GELF message without blocking.
+     *
+     * @param frame  the buffer containing the UTF-8 encoded JSON representation of the GELF message
+     * @param offset the start offset of the GELF message in {@code frame}
+     * @param length the length of the GELF message in bytes
+     * @return {@code true} if the message has been accepted by the transport, {@code false} otherwise
+     * @see #send(byte[], int, int)
+     */
+    boolean trySend(byte[] frame, int offset, int length);
+}
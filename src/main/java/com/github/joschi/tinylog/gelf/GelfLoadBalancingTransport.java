@@ -0,0 +1,301 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.graylog2.gelfclient.GelfMessage;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link GelfFrameTransport} distributing GELF messages across several independent transports, usually one per
+ * GELF-compatible server.
+ * <p>
+ * The transport for a message is chosen by a {@link Strategy}. If the chosen transport doesn't accept the message
+ * immediately, the other transports are tried before giving up (or blocking on the chosen transport).
+ * <p>
+ * Transports which track the health of their server skip servers which are currently unavailable (see
+ * {@link EndpointHealth}), unless no server is available at all. An unavailable server is probed with a single
+ * message after the retry delay, and it is used again as soon as a message has been sent successfully.
+ */
+public class GelfLoadBalancingTransport implements GelfFrameTransport, FlushableGelfTransport, DroppingTransport {
+    /**
+     * The strategy for choosing a transport.
+     */
+    public enum Strategy {
+        /**
+         * Use all transports in turn.
+         */
+        ROUND_ROBIN,
+        /**
+         * Use the first available transport in the configured order, i. e. the first server is the primary server
+         * and the others are only used while the preceding servers are unavailable.
+         */
+        FAILOVER,
+        /**
+         * Use the transport with the smallest number of pending messages.
+         */
+        LEAST_OUTSTANDING,
+        /**
+         * Use the transport with fewer pending messages out of two randomly chosen transports.
+         */
+        POWER_OF_TWO_CHOICES;
+
+        /**
+         * Parse the name of a strategy, ignoring case.
+         *
+         * @param strategy the name of the strategy, {@code null} selects {@link #ROUND_ROBIN}
+         * @return the strategy
+         * @throws IllegalArgumentException if the strategy is unknown
+         */
+        static Strategy parse(final String strategy) {
+            if (null == strategy || strategy.trim().isEmpty()) {
+                return ROUND_ROBIN;
+            }
+            return valueOf(strategy.trim().toUpperCase(Locale.ENGLISH));
+        }
+    }
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private final GelfFrameTransport[] transports;
+    private final EndpointHealth[] health;
+    private final Strategy strategy;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ThreadLocal<JsonBuffer> buffers = new ThreadLocal<JsonBuffer>() {
+        @Override
+        protected JsonBuffer initialValue() {
+            return new JsonBuffer(INITIAL_BUFFER_SIZE);
+        }
+    };
+
+    /**
+     * Construct a new GelfLoadBalancingTransport instance.
+     *
+     * @param transports the transports to distribute the GELF messages across
+     * @param strategy   the strategy for choosing a transport
+     */
+    public GelfLoadBalancingTransport(final List<? extends GelfFrameTransport> transports, final Strategy strategy) {
+        if (transports.isEmpty()) {
+            throw new IllegalArgumentException("At least one transport is required");
+        }
+
+        this.transports = transports.toArray(new GelfFrameTransport[transports.size()]);
+        this.health = new EndpointHealth[this.transports.length];
+        for (int i = 0; i < this.transports.length; i++) {
+            if (this.transports[i] instanceof HealthTrackingTransport) {
+                health[i] = ((HealthTrackingTransport) this.transports[i]).getHealth();
+            }
+        }
+        this.strategy = strategy;
+    }
+
+    /**
+     * @return the index of the transport to use for the next GELF message
+     */
+    int select() {
+        final int count = transports.length;
+        if (count == 1) {
+            return 0;
+        }
+
+        // Unavailable servers which are due for a retry get the next message
+        for (int i = 0; i < count; i++) {
+            if (health[i] != null && health[i].tryProbe()) {
+                return i;
+            }
+        }
+
+        switch (strategy) {
+            case FAILOVER:
+                for (int i = 0; i < count; i++) {
+                    if (isAvailable(i)) {
+                        return i;
+                    }
+                }
+                return 0;
+            case LEAST_OUTSTANDING:
+                // Start at a different transport every time, so that idle transports are used in turn
+                final int start = (next.getAndIncrement() & Integer.MAX_VALUE) % count;
+                int selected = -1;
+                long minimum = Long.MAX_VALUE;
+                for (int i = 0; i < count && minimum > 0L; i++) {
+                    final int index = (start + i) % count;
+                    if (isAvailable(index)) {
+                        final long pending = pendingMessages(index);
+                        if (pending < minimum) {
+                            selected = index;
+                            minimum = pending;
+                        }
+                    }
+                }
+                return selected < 0 ? start : selected;
+            case POWER_OF_TWO_CHOICES:
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                final int first = random.nextInt(count);
+                int second = random.nextInt(count - 1);
+                if (second >= first) {
+                    second++;
+                }
+                final boolean firstAvailable = isAvailable(first);
+                if (firstAvailable && isAvailable(second)) {
+                    return pendingMessages(first) <= pendingMessages(second) ? first : second;
+                } else if (firstAvailable) {
+                    return first;
+                } else if (isAvailable(second)) {
+                    return second;
+                }
+                return roundRobin();
+            default:
+                return roundRobin();
+        }
+    }
+
+    private int roundRobin() {
+        final int count = transports.length;
+        final int start = (next.getAndIncrement() & Integer.MAX_VALUE) % count;
+        for (int i = 0; i < count; i++) {
+            final int index = (start + i) % count;
+            if (isAvailable(index)) {
+                return index;
+            }
+        }
+        return start;
+    }
+
+    private boolean isAvailable(final int index) {
+        return health[index] == null || health[index].isAvailable();
+    }
+
+    private long pendingMessages(final int index) {
+        final GelfFrameTransport transport = transports[index];
+        return transport instanceof FlushableGelfTransport
+                ? ((FlushableGelfTransport) transport).getPendingMessages() : 0L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void send(final byte[] frame, final int offset, final int length) throws InterruptedException {
+        final int selected = select();
+        if (!trySend(selected, frame, offset, length)) {
+            transports[selected].send(frame, offset, length);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean trySend(final byte[] frame, final int offset, final int length) {
+        return trySend(select(), frame, offset, length);
+    }
+
+    private boolean trySend(final int selected, final byte[] frame, final int offset, final int length) {
+        if (transports[selected].trySend(frame, offset, length)) {
+            return true;
+        }
+
+        // Try the available servers first and the unavailable ones only as a last resort
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 1; i < transports.length; i++) {
+                final int index = (selected + i) % transports.length;
+                if (isAvailable(index) == (pass == 0) && transports[index].trySend(frame, offset, length)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void send(final GelfMessage message) throws InterruptedException {
+        final JsonBuffer buffer = encode(message);
+        send(buffer.array(), 0, buffer.size());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean trySend(final GelfMessage message) {
+        final JsonBuffer buffer = encode(message);
+        return trySend(buffer.array(), 0, buffer.size());
+    }
+
+    private JsonBuffer encode(final GelfMessage message) {
+        final JsonBuffer buffer = buffers.get();
+        buffer.reset();
+        GelfEncoder.encode(message, buffer);
+        return buffer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long flush(final long timeoutMillis) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long outstanding = 0L;
+        for (GelfFrameTransport transport : transports) {
+            if (transport instanceof FlushableGelfTransport) {
+                final long remainingMillis = Math.max(0L, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+                outstanding += ((FlushableGelfTransport) transport).flush(remainingMillis);
+            }
+        }
+        return outstanding;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getPendingMessages() {
+        long pending = 0L;
+        for (int i = 0; i < transports.length; i++) {
+            pending += pendingMessages(i);
+        }
+        return pending;
+    }
+
+    /**
+     * Returns the health of the GELF-compatible servers in the configured order. The health of transports which don't
+     * track it is {@code null}.
+     *
+     * @return the health of the GELF-compatible servers
+     */
+    public EndpointHealth[] getHealth() {
+        return health.clone();
+    }
+
+    /**
+     * Returns the number of GELF messages which have been dropped by the transports of all servers.
+     *
+     * @return the number of dropped messages
+     */
+    @Override
+    public long getDroppedMessages() {
+        long dropped = 0L;
+        for (GelfFrameTransport transport : transports) {
+            if (transport instanceof DroppingTransport) {
+                dropped += ((DroppingTransport) transport).getDroppedMessages();
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() {
+        for (GelfFrameTransport transport : transports) {
+            transport.stop();
+        }
+    }
+}
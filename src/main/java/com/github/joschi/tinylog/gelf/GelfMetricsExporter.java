@@ -0,0 +1,25 @@
+package com.github.joschi.tinylog.gelf;
+
+/**
+ * Service provider interface for exporting the {@link GelfWriterMetrics} of every {@link GelfWriter} to a metrics
+ * library like Micrometer or Dropwizard Metrics, e. g. by registering gauges which read the metrics.
+ * <p>
+ * Implementations are discovered with {@link java.util.ServiceLoader}, i. e. they have to be listed in
+ * {@code META-INF/services/com.github.joschi.tinylog.gelf.GelfMetricsExporter} and need a public no-argument
+ * constructor. A single instance is created per {@link GelfWriter}.
+ */
+public interface GelfMetricsExporter {
+    /**
+     * Called once the {@link GelfWriter} has been initialized.
+     *
+     * @param metrics the metrics of the writer
+     */
+    void register(GelfWriterMetrics metrics);
+
+    /**
+     * Called when the {@link GelfWriter} is closed.
+     *
+     * @param metrics the metrics of the writer
+     */
+    void unregister(GelfWriterMetrics metrics);
+}
@@ -0,0 +1,220 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.graylog2.gelfclient.GelfMessage;
+import org.pmw.tinylog.InternalLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link GelfFrameTransport} which spools GELF messages to disk if the underlying transport doesn't accept them,
+ * e. g. because the GELF-compatible server is unreachable and the queue of the transport is full.
+ * <p>
+ * Spooled messages are stored in segment files and replayed by a background thread as soon as the
+ * underlying transport accepts messages again. As long as there are spooled messages, new messages are spooled as
+ * well in order to preserve their order.
+ * <p>
+ * A spooled message is removed from disk as soon as the underlying transport has accepted it, which for a queueing
+ * transport like {@link GelfTcpBatchTransport} only means that it has been put into the in-memory queue. The spool
+ * therefore only protects messages while the underlying transport rejects them. Messages which have been accepted
+ * but not yet written to the server are lost if the application crashes or the server doesn't come back before the
+ * transport is stopped. A spooled message may be sent twice if the application is stopped between handing it to
+ * the transport and removing it from disk.
+ * <p>
+ * The UDP transport sends datagrams without knowing whether the server receives them and practically never rejects
+ * a message, so spooling has no effect with UDP.
+ */
+public class GelfSpoolTransport implements GelfFrameTransport, FlushableGelfTransport, DroppingTransport {
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    private static final long IDLE_MILLIS = 100L;
+    private static final long RETRY_MILLIS = 100L;
+
+    private final GelfFrameTransport transport;
+    private final DiskSpool spool;
+    private final Thread replayerThread;
+    private final ThreadLocal<JsonBuffer> buffers = new ThreadLocal<JsonBuffer>() {
+        @Override
+        protected JsonBuffer initialValue() {
+            return new JsonBuffer(INITIAL_BUFFER_SIZE);
+        }
+    };
+
+    private volatile boolean running = true;
+
+    /**
+     * Construct a new GelfSpoolTransport instance and start its replayer thread. Messages which have been spooled in
+     * the given directory before are replayed.
+     *
+     * @param transport the transport to send GELF messages with
+     * @param directory the directory for the spool files
+     * @param maxBytes  the maximum size of all spool files in bytes
+     * @throws IOException if the spool directory couldn't be created or read
+     */
+    public GelfSpoolTransport(final GelfFrameTransport transport, final File directory, final long maxBytes)
+            throws IOException {
+        this.transport = transport;
+        this.spool = new DiskSpool(directory, maxBytes);
+        this.replayerThread = new Thread(new Replayer(), "tinylog-gelf-spool");
+        this.replayerThread.setDaemon(true);
+        this.replayerThread.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This method only blocks if the message is too large for the spool.
+     */
+    @Override
+    public void send(final byte[] frame, final int offset, final int length) throws InterruptedException {
+        if (!trySend(frame, offset, length)) {
+            transport.send(frame, offset, length);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean trySend(final byte[] frame, final int offset, final int length) {
+        if (spool.isEmpty() && transport.trySend(frame, offset, length)) {
+            return true;
+        }
+
+        try {
+            return running && spool.append(frame, offset, length);
+        } catch (IOException e) {
+            InternalLogger.warn(e, "Couldn't spool GELF message");
+            return false;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void send(final GelfMessage message) throws InterruptedException {
+        final JsonBuffer buffer = encode(message);
+        send(buffer.array(), 0, buffer.size());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean trySend(final GelfMessage message) {
+        final JsonBuffer buffer = encode(message);
+        return trySend(buffer.array(), 0, buffer.size());
+    }
+
+    private JsonBuffer encode(final GelfMessage message) {
+        final JsonBuffer buffer = buffers.get();
+        buffer.reset();
+        GelfEncoder.encode(message, buffer);
+        return buffer;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Spooled messages are counted as outstanding while the transport is running. Once it has been stopped, they are
+     * kept on disk and replayed by the next instance using the same directory.
+     */
+    @Override
+    public long flush(final long timeoutMillis) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int tries = 0;
+        while (running && !spool.isEmpty() && System.nanoTime() - deadline < 0L) {
+            tries = AsyncDispatcher.backOff(tries);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        long outstanding = running ? spool.size() : 0L;
+        if (transport instanceof FlushableGelfTransport) {
+            final long remainingMillis = Math.max(0L, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+            outstanding += ((FlushableGelfTransport) transport).flush(remainingMillis);
+        }
+        return outstanding;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getPendingMessages() {
+        final long pending = transport instanceof FlushableGelfTransport
+                ? ((FlushableGelfTransport) transport).getPendingMessages() : 0L;
+        return spool.size() + pending;
+    }
+
+    /**
+     * Returns the number of spooled GELF messages which have been evicted because the spool quota has been exceeded.
+     *
+     * @return the number of evicted messages
+     */
+    public long getEvictedMessages() {
+        return spool.getEvictedFrames();
+    }
+
+    /**
+     * Returns the number of GELF messages which have been evicted from the spool or dropped by the underlying
+     * transport.
+     *
+     * @return the number of dropped messages
+     */
+    @Override
+    public long getDroppedMessages() {
+        final long dropped = transport instanceof DroppingTransport
+                ? ((DroppingTransport) transport).getDroppedMessages() : 0L;
+        return getEvictedMessages() + dropped;
+    }
+
+    /**
+     * Returns the number of GELF messages which are waiting in the spool.
+     *
+     * @return the number of spooled messages
+     */
+    public long getSpooledMessages() {
+        return spool.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() {
+        running = false;
+        replayerThread.interrupt();
+        try {
+            replayerThread.join(RETRY_MILLIS + IDLE_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        transport.stop();
+        spool.close();
+    }
+
+    private final class Replayer implements Runnable {
+        private final JsonBuffer buffer = new JsonBuffer(INITIAL_BUFFER_SIZE);
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    buffer.reset();
+                    if (!spool.peek(buffer)) {
+                        Thread.sleep(IDLE_MILLIS);
+                    } else if (transport.trySend(buffer.array(), 0, buffer.size())) {
+                        spool.remove();
+                    } else {
+                        Thread.sleep(RETRY_MILLIS);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // The transport is being stopped, spooled messages stay on disk
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.graylog2.gelfclient.GelfConfiguration;
+import org.graylog2.gelfclient.transport.GelfTcpTransport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * gelfclient's {@link GelfTcpTransport} which is able to wait until its queue has been drained.
+ */
+final class GelfTcpClientTransport extends GelfTcpTransport implements FlushableGelfTransport {
+    GelfTcpClientTransport(final GelfConfiguration config) {
+        super(config);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * gelfclient doesn't track messages which have been taken from its queue, so this method waits until the queue
+     * is empty. The message which is being written to the network at that time is not taken into account.
+     */
+    @Override
+    public long flush(final long timeoutMillis) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int tries = 0;
+        while (!queue.isEmpty() && System.nanoTime() - deadline < 0L) {
+            tries = AsyncDispatcher.backOff(tries);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return queue.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getPendingMessages() {
+        return queue.size();
+    }
+}
@@ -0,0 +1,385 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.graylog2.gelfclient.GelfMessage;
+import org.pmw.tinylog.InternalLogger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link GelfFrameTransport} sending GELF messages over UDP using a connected {@link DatagramChannel}.
+ * <p>
+ * Messages are sent on the calling thread without any intermediate queue. Messages which don't fit into a single
+ * datagram are split into GELF chunks (up to 128 chunks per message). The datagrams are assembled in direct
+ * {@link ByteBuffer}s which are taken from a pool and returned after sending. Messages may optionally be compressed
+ * with GZIP or ZLIB before being chunked.
+ * <p>
+ * If the hostname of the server can't be resolved, the transport stays unconnected and drops all messages. It tries to
+ * resolve the hostname again once the retry delay has elapsed.
+ */
+public class GelfUdpChannelTransport
+        implements GelfFrameTransport, HealthTrackingTransport, RedirectableTransport, DroppingTransport {
+    /**
+     * Maximum size of a datagram payload. This is the same limit gelfclient uses and fits into the usual
+     * Ethernet MTU.
+     */
+    static final int MAX_CHUNK_SIZE = 1420;
+    static final int MAX_CHUNKS = 128;
+    static final int CHUNK_HEADER_SIZE = 12;
+    private static final byte CHUNK_MAGIC_BYTE_1 = 0x1e;
+    private static final byte CHUNK_MAGIC_BYTE_2 = 0x0f;
+    private static final int CHUNK_DATA_SIZE = MAX_CHUNK_SIZE - CHUNK_HEADER_SIZE;
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    private static final int DEFAULT_RETRY_DELAY = 500;
+
+    private final int sendBufferSize;
+    private final RingBuffer<ByteBuffer> bufferPool;
+    private final Compression compression;
+    private final EndpointHealth health;
+    private final long retryDelayNanos;
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final Object lock = new Object();
+    private final ThreadLocal<JsonBuffer> buffers = new ThreadLocal<JsonBuffer>() {
+        @Override
+        protected JsonBuffer initialValue() {
+            return new JsonBuffer(INITIAL_BUFFER_SIZE);
+        }
+    };
+    private final ThreadLocal<JsonBuffer> compressionBuffers = new ThreadLocal<JsonBuffer>() {
+        @Override
+        protected JsonBuffer initialValue() {
+            return new JsonBuffer(INITIAL_BUFFER_SIZE);
+        }
+    };
+
+    private volatile InetSocketAddress remoteAddress;
+    /**
+     * The connected channel, {@code null} as long as the hostname of the server can't be resolved.
+     */
+    private volatile DatagramChannel channel;
+    private volatile boolean running = true;
+    private long nextConnect;
+
+    /**
+     * Construct a new GelfUdpChannelTransport instance.
+     *
+     * @param remoteAddress  the address of the GELF-compatible server
+     * @param sendBufferSize the size of the socket send buffer in bytes; a value of {@code -1} uses the system default
+     * @param bufferPoolSize the maximum number of pooled datagram buffers
+     * @throws IOException if the datagram channel couldn't be opened
+     */
+    public GelfUdpChannelTransport(final InetSocketAddress remoteAddress,
+                                   final int sendBufferSize,
+                                   final int bufferPoolSize) throws IOException {
+        this(remoteAddress, sendBufferSize, bufferPoolSize, Compression.none(), DEFAULT_RETRY_DELAY);
+    }
+
+    GelfUdpChannelTransport(final InetSocketAddress remoteAddress,
+                            final int sendBufferSize,
+                            final int bufferPoolSize,
+                            final Compression compression,
+                            final int retryDelay) throws IOException {
+        this.remoteAddress = remoteAddress;
+        this.sendBufferSize = sendBufferSize;
+        this.bufferPool = new RingBuffer<>(bufferPoolSize);
+        this.compression = compression;
+        this.health = new EndpointHealth(remoteAddress, retryDelay);
+        this.retryDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, retryDelay));
+        synchronized (lock) {
+            this.channel = open();
+        }
+    }
+
+    /**
+     * Open a datagram channel connected to the server. If the hostname of the server can't be resolved (yet), the
+     * transport stays unconnected and tries again after the retry delay.
+     *
+     * @return the connected channel, {@code null} if the hostname of the server couldn't be resolved
+     */
+    private DatagramChannel open() throws IOException {
+        InetSocketAddress address = remoteAddress;
+        if (address.isUnresolved()) {
+            address = new InetSocketAddress(address.getHostString(), address.getPort());
+            if (address.isUnresolved()) {
+                nextConnect = System.nanoTime() + retryDelayNanos;
+                health.failure();
+                return null;
+            }
+            remoteAddress = address;
+            health.setRemoteAddress(address);
+        }
+
+        final DatagramChannel c = DatagramChannel.open();
+        try {
+            if (sendBufferSize > 0) {
+                c.socket().setSendBufferSize(sendBufferSize);
+            }
+            c.connect(address);
+            return c;
+        } catch (IOException e) {
+            c.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the connected channel, {@code null} if the transport is unconnected and the retry delay hasn't elapsed
+     * or the hostname of the server still can't be resolved
+     */
+    private DatagramChannel channel() throws IOException {
+        final DatagramChannel c = channel;
+        if (c != null) {
+            return c;
+        }
+
+        synchronized (lock) {
+            if (channel == null && running && System.nanoTime() - nextConnect >= 0L) {
+                channel = open();
+            }
+            return channel;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void send(final byte[] frame, final int offset, final int length) throws InterruptedException {
+        if (!trySend(frame, offset, length)) {
+            // Nobody is going to retry the message
+            droppedMessages.incrementAndGet();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * As there is no queue, this method only returns {@code false} if the message couldn't be sent because of an I/O
+     * error. Messages which can never be sent, because they exceed the maximum number of chunks or because the hostname
+     * of the server can't be resolved, are dropped and counted in {@link #getDroppedMessages()}, but reported as
+     * accepted, so that they aren't retried.
+     */
+    @Override
+    public boolean trySend(final byte[] frame, final int offset, final int length) {
+        if (!running) {
+            return false;
+        }
+
+        if (compression.appliesTo(length)) {
+            final JsonBuffer compressed = compressionBuffers.get();
+            compressed.reset();
+            compression.compress(frame, offset, length, compressed);
+            return sendDatagrams(compressed.array(), 0, compressed.size());
+        }
+
+        return sendDatagrams(frame, offset, length);
+    }
+
+    private boolean sendDatagrams(final byte[] frame, final int offset, final int length) {
+        final int chunks = (length + CHUNK_DATA_SIZE - 1) / CHUNK_DATA_SIZE;
+        if (length > MAX_CHUNK_SIZE && chunks > MAX_CHUNKS) {
+            droppedMessages.incrementAndGet();
+            InternalLogger.warn("GELF message of " + length + " bytes exceeds the maximum of " + MAX_CHUNKS + " chunks");
+            // Sending the message again can't succeed, so don't let the caller mistake this for a full transport
+            return true;
+        }
+
+        final ByteBuffer buffer = acquireBuffer();
+        boolean rejected = false;
+        try {
+            final DatagramChannel c = channel();
+            if (c == null) {
+                // The hostname of the server can't be resolved, so the message is dropped without retrying
+                droppedMessages.incrementAndGet();
+                health.failure();
+                return true;
+            }
+
+            if (length <= MAX_CHUNK_SIZE) {
+                buffer.clear();
+                buffer.put(frame, offset, length);
+                buffer.flip();
+                rejected = write(c, buffer);
+            } else {
+                final long messageId = ThreadLocalRandom.current().nextLong();
+                for (int i = 0; i < chunks; i++) {
+                    final int chunkOffset = i * CHUNK_DATA_SIZE;
+                    buffer.clear();
+                    buffer.put(CHUNK_MAGIC_BYTE_1).put(CHUNK_MAGIC_BYTE_2)
+                            .putLong(messageId)
+                            .put((byte) i).put((byte) chunks)
+                            .put(frame, offset + chunkOffset, Math.min(CHUNK_DATA_SIZE, length - chunkOffset));
+                    buffer.flip();
+                    rejected |= write(c, buffer);
+                }
+            }
+
+            if (rejected) {
+                health.failure();
+            } else {
+                health.success();
+            }
+            return true;
+        } catch (IOException e) {
+            // Not counted as dropped, as the caller decides whether to retry the message
+            health.failure();
+            InternalLogger.warn(e, "Couldn't send GELF message to " + remoteAddress);
+            return false;
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * @return {@code true} if the remote host reported a previous datagram as undeliverable, {@code false} otherwise
+     */
+    private boolean write(final DatagramChannel c, final ByteBuffer datagram) throws IOException {
+        try {
+            c.write(datagram);
+            return false;
+        } catch (PortUnreachableException e) {
+            // Reports a previous datagram which has been rejected by the remote host, this one hasn't been sent yet
+            datagram.rewind();
+            c.write(datagram);
+            return true;
+        } catch (ClosedChannelException e) {
+            // The channel is closed if a thread gets interrupted while writing to it, so reopen it and try once more
+            if (!running) {
+                throw e;
+            }
+            datagram.rewind();
+            final boolean interrupted = Thread.interrupted();
+            try {
+                final DatagramChannel reopened = reopen();
+                if (reopened == null) {
+                    throw e;
+                }
+                reopened.write(datagram);
+                return false;
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private DatagramChannel reopen() throws IOException {
+        synchronized (lock) {
+            if (channel == null || !channel.isOpen()) {
+                channel = open();
+            }
+            return channel;
+        }
+    }
+
+    private ByteBuffer acquireBuffer() {
+        final ByteBuffer buffer = bufferPool.poll();
+        return buffer == null ? ByteBuffer.allocateDirect(MAX_CHUNK_SIZE) : buffer;
+    }
+
+    private void releaseBuffer(final ByteBuffer buffer) {
+        // If the pool is full the buffer is simply garbage collected
+        bufferPool.offer(buffer);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The datagram channel is connected to the new address right away. Messages which are being sent concurrently
+     * either go to the old address or are sent again through the new channel.
+     */
+    @Override
+    public void redirect(final InetSocketAddress newAddress) {
+        synchronized (lock) {
+            if (!running) {
+                return;
+            }
+
+            remoteAddress = newAddress;
+            health.setRemoteAddress(newAddress);
+            final DatagramChannel oldChannel = channel;
+            channel = null;
+            nextConnect = System.nanoTime();
+            try {
+                channel = open();
+            } catch (IOException e) {
+                // The next message tries to open a channel again
+                InternalLogger.warn(e, "Couldn't connect datagram channel to " + newAddress);
+            }
+            closeChannel(oldChannel);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void send(final GelfMessage message) throws InterruptedException {
+        trySend(message);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean trySend(final GelfMessage message) {
+        final JsonBuffer buffer = buffers.get();
+        buffer.reset();
+        GelfEncoder.encode(message, buffer);
+        return trySend(buffer.array(), 0, buffer.size());
+    }
+
+    /**
+     * Returns the number of GELF messages which have been accepted but couldn't be sent. Messages which have been
+     * rejected by {@link #trySend(byte[], int, int)} aren't included, they are counted by the caller.
+     *
+     * @return the number of dropped messages
+     */
+    @Override
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * As UDP is connectionless, a server is only considered unavailable if the remote host rejects datagrams with
+     * ICMP "port unreachable" messages or if datagrams can't be sent at all.
+     */
+    @Override
+    public EndpointHealth getHealth() {
+        return health;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() {
+        running = false;
+        synchronized (lock) {
+            closeChannel(channel);
+            channel = null;
+        }
+    }
+
+    private static void closeChannel(final DatagramChannel c) {
+        if (c == null) {
+            return;
+        }
+
+        try {
+            c.close();
+        } catch (IOException e) {
+            InternalLogger.warn(e, "Couldn't close datagram channel");
+        }
+    }
+}
@@ -1,11 +1,12 @@
 package com.github.joschi.tinylog.gelf;
 
 import org.graylog2.gelfclient.GelfConfiguration;
+import org.graylog2.gelfclient.GelfMessage;
 import org.graylog2.gelfclient.GelfMessageBuilder;
-import org.graylog2.gelfclient.GelfMessageLevel;
 import org.graylog2.gelfclient.GelfTransports;
 import org.graylog2.gelfclient.transport.GelfTransport;
 import org.pmw.tinylog.Configuration;
+import org.pmw.tinylog.InternalLogger;
 import org.pmw.tinylog.Level;
 import org.pmw.tinylog.LogEntry;
 import org.pmw.tinylog.writers.LogEntryValue;
@@ -14,15 +15,19 @@ import org.pmw.tinylog.writers.Property;
 import org.pmw.tinylog.writers.VMShutdownHook;
 import org.pmw.tinylog.writers.Writer;
 
-import java.net.InetAddress;
+import java.io.File;
+import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.EnumSet;
-import java.util.Formatter;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A tinylog {@link org.pmw.tinylog.writers.Writer} writing log messages to a GELF-compatible server like
@@ -36,11 +41,41 @@ import java.util.Set;
                 @Property(name = "transport", type = String.class, optional = true),
                 @Property(name = "hostname", type = String.class, optional = true),
                 @Property(name = "additionalLogEntryValues", type = String[].class, optional = true),
-                @Property(name = "staticFields", type = String[].class, optional = true)
+                @Property(name = "staticFields", type = String[].class, optional = true),
+                @Property(name = "asyncBufferSize", type = String.class, optional = true),
+                @Property(name = "overflowPolicy", type = String.class, optional = true),
+                @Property(name = "batchSize", type = String.class, optional = true),
+                @Property(name = "batchLingerMs", type = String.class, optional = true),
+                @Property(name = "compression", type = String.class, optional = true),
+                @Property(name = "flushTimeoutMs", type = String.class, optional = true),
+                @Property(name = "closeTimeoutMs", type = String.class, optional = true),
+                @Property(name = "spoolDirectory", type = String.class, optional = true),
+                @Property(name = "spoolMaxBytes", type = String.class, optional = true),
+                @Property(name = "loadBalancing", type = String.class, optional = true),
+                @Property(name = "rateLimit", type = String.class, optional = true),
+                @Property(name = "deduplicationWindowMs", type = String.class, optional = true),
+                @Property(name = "deduplicationCacheSize", type = String.class, optional = true),
+                @Property(name = "maxStackDepth", type = String.class, optional = true),
+                @Property(name = "maxCauseDepth", type = String.class, optional = true),
+                @Property(name = "stackTraceFilters", type = String[].class, optional = true),
+                @Property(name = "maxFieldLength", type = String.class, optional = true),
+                @Property(name = "maxMessageSize", type = String.class, optional = true),
+                @Property(name = "startupBufferSize", type = String.class, optional = true),
+                @Property(name = "dnsRefreshIntervalMs", type = String.class, optional = true)
         }
 )
 public final class GelfWriter implements Writer {
     private static final String FIELD_SEPARATOR = ":";
+    private static final String GELFCLIENT_TCP_TRANSPORT = "TCP_GELFCLIENT";
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    private static final int MAX_CACHED_STACK_FRAMES = 4096;
+    private static final int MAX_CACHED_STACK_TRACES = 256;
+    private static final int DEFAULT_PORT = 12201;
+    private static final int UDP_BUFFER_POOL_SIZE = 16;
+    private static final int DEFAULT_FLUSH_TIMEOUT = 1000;
+    private static final int DEFAULT_CLOSE_TIMEOUT = 5000;
+    private static final long DEFAULT_SPOOL_MAX_BYTES = 128L * 1024L * 1024L;
+    private static final int DEFAULT_DEDUPLICATION_CACHE_SIZE = 1024;
     private static final EnumSet<LogEntryValue> BASIC_LOG_ENTRY_VALUES = EnumSet.of(
             LogEntryValue.DATE,
             LogEntryValue.LEVEL,
@@ -50,7 +85,7 @@ public final class GelfWriter implements Writer {
     private final String server;
     private final int port;
     private final GelfTransports transport;
-    private final String hostname;
+    private final LocalHostname hostname;
     private final Set<LogEntryValue> requiredLogEntryValues;
     private final Map<String, Object> staticFields;
     private final int queueSize;
@@ -58,8 +93,44 @@ public final class GelfWriter implements Writer {
     private final int reconnectDelay;
     private final int sendBufferSize;
     private final boolean tcpNoDelay;
+    private final int asyncBufferSize;
+    private final OverflowPolicy overflowPolicy;
+    private final int batchSize;
+    private final int batchLingerMs;
+    private final Compression compression;
+    private final int flushTimeoutMs;
+    private final int closeTimeoutMs;
+    private final File spoolDirectory;
+    private final long spoolMaxBytes;
+    private final GelfLoadBalancingTransport.Strategy loadBalancing;
+    private final RateLimiter rateLimit;
+    private final Deduplicator deduplicator;
+    private final int maxStringLength;
+    private final int maxMessageSize;
+    private final AtomicLong truncatedMessages = new AtomicLong();
+    private final int startupBufferSize;
+    private final int dnsRefreshIntervalMs;
+    private final boolean gelfClientTransport;
+    private final StackTraceRenderer stackTraceRenderer;
+    private final GelfEncoder encoder;
+    private final GelfWriterMetrics metrics;
+    private final ThreadLocal<JsonBuffer> buffers = new ThreadLocal<JsonBuffer>() {
+        @Override
+        protected JsonBuffer initialValue() {
+            return new JsonBuffer(INITIAL_BUFFER_SIZE);
+        }
+    };
+
+    private final Object startLock = new Object();
 
-    private GelfTransport client;
+    private volatile GelfTransport client;
+    private volatile AsyncDispatcher dispatcher;
+    private volatile StartupBuffer startupBuffer;
+    private DnsRefresher dnsRefresher;
+    private TransportFactory transportFactory;
+    private Thread starter;
+    private boolean closed;
+    private volatile EndpointHealth[] endpointHealth = new EndpointHealth[0];
 
     /**
      * Construct a new GelfWriter instance.
@@ -89,10 +160,65 @@ public final class GelfWriter implements Writer {
                       final int reconnectDelay,
                       final int sendBufferSize,
                       final boolean tcpNoDelay) {
+        this(server, port, transport, hostname, requiredLogEntryValues, staticFields,
+                queueSize, connectTimeout, reconnectDelay, sendBufferSize, tcpNoDelay, false);
+    }
+
+    private GelfWriter(final String server,
+                       final int port,
+                       final GelfTransports transport,
+                       final String hostname,
+                       final Set<LogEntryValue> requiredLogEntryValues,
+                       final Map<String, Object> staticFields,
+                       final int queueSize,
+                       final int connectTimeout,
+                       final int reconnectDelay,
+                       final int sendBufferSize,
+                       final boolean tcpNoDelay,
+                       final boolean gelfClientTransport) {
+        this(server, port, transport, hostname, requiredLogEntryValues, staticFields,
+                queueSize, connectTimeout, reconnectDelay, sendBufferSize, tcpNoDelay, 0, OverflowPolicy.block(),
+                1, 0, Compression.none(), DEFAULT_FLUSH_TIMEOUT,
+                DEFAULT_CLOSE_TIMEOUT, null, DEFAULT_SPOOL_MAX_BYTES, GelfLoadBalancingTransport.Strategy.ROUND_ROBIN,
+                RateLimiter.unlimited(), Deduplicator.disabled(), 0, 0, PackagePrefixFilter.none(), 0, 0, 0, 0,
+                gelfClientTransport);
+    }
+
+    private GelfWriter(final String server,
+                       final int port,
+                       final GelfTransports transport,
+                       final String hostname,
+                       final Set<LogEntryValue> requiredLogEntryValues,
+                       final Map<String, Object> staticFields,
+                       final int queueSize,
+                       final int connectTimeout,
+                       final int reconnectDelay,
+                       final int sendBufferSize,
+                       final boolean tcpNoDelay,
+                       final int asyncBufferSize,
+                       final OverflowPolicy overflowPolicy,
+                       final int batchSize,
+                       final int batchLingerMs,
+                       final Compression compression,
+                       final int flushTimeoutMs,
+                       final int closeTimeoutMs,
+                       final File spoolDirectory,
+                       final long spoolMaxBytes,
+                       final GelfLoadBalancingTransport.Strategy loadBalancing,
+                       final RateLimiter rateLimit,
+                       final Deduplicator deduplicator,
+                       final int maxStackDepth,
+                       final int maxCauseDepth,
+                       final PackagePrefixFilter stackTraceFilters,
+                       final int maxFieldLength,
+                       final int maxMessageSize,
+                       final int startupBufferSize,
+                       final int dnsRefreshIntervalMs,
+                       final boolean gelfClientTransport) {
         this.server = server;
         this.port = port;
         this.transport = transport;
-        this.hostname = buildHostName(hostname);
+        this.hostname = LocalHostname.of(hostname);
         this.requiredLogEntryValues = buildRequiredLogEntryValues(requiredLogEntryValues);
         this.staticFields = staticFields;
         this.queueSize = queueSize;
@@ -100,6 +226,29 @@ public final class GelfWriter implements Writer {
         this.reconnectDelay = reconnectDelay;
         this.sendBufferSize = sendBufferSize;
         this.tcpNoDelay = tcpNoDelay;
+        this.asyncBufferSize = asyncBufferSize;
+        this.overflowPolicy = overflowPolicy;
+        this.batchSize = batchSize;
+        this.batchLingerMs = batchLingerMs;
+        this.compression = compression;
+        this.flushTimeoutMs = flushTimeoutMs;
+        this.closeTimeoutMs = closeTimeoutMs;
+        this.spoolDirectory = spoolDirectory;
+        this.spoolMaxBytes = spoolMaxBytes;
+        this.loadBalancing = loadBalancing;
+        this.rateLimit = rateLimit;
+        this.deduplicator = deduplicator;
+        // GELF messages built with the GelfMessageBuilder are encoded by the transport, which is why a maximum message
+        // size selects a transport sending encoded frames instead
+        this.maxStringLength = maxFieldLength;
+        this.maxMessageSize = maxMessageSize;
+        this.startupBufferSize = startupBufferSize;
+        this.dnsRefreshIntervalMs = dnsRefreshIntervalMs;
+        this.gelfClientTransport = gelfClientTransport;
+        this.stackTraceRenderer = new StackTraceRenderer(MAX_CACHED_STACK_FRAMES, MAX_CACHED_STACK_TRACES,
+                maxStackDepth, maxCauseDepth, stackTraceFilters);
+        this.encoder = new GelfEncoder(this.hostname, staticFields, stackTraceRenderer, maxFieldLength, maxMessageSize);
+        this.metrics = new GelfWriterMetrics(this, server);
     }
 
     /**
@@ -126,7 +275,7 @@ public final class GelfWriter implements Writer {
      * using an auto-detected local hostname.
      */
     public GelfWriter() {
-        this("localhost", 12201);
+        this("localhost", DEFAULT_PORT);
     }
 
     /**
@@ -135,7 +284,7 @@ public final class GelfWriter implements Writer {
      * @param server the hostname of the GELF-compatible server
      */
     public GelfWriter(final String server) {
-        this(server, 12201);
+        this(server, DEFAULT_PORT);
     }
 
     /**
@@ -166,7 +315,8 @@ public final class GelfWriter implements Writer {
      *
      * @param server                   the hostname of the GELF-compatible server
      * @param port                     the port of the GELF-compatible server
-     * @param transport                the transport protocol to use
+     * @param transport                the transport protocol to use, {@code UDP}, {@code TCP} or
+     *                                 {@code TCP_GELFCLIENT} for the TCP transport of the GELF client library
      * @param hostname                 the hostname of the application
      * @param additionalLogEntryValues additional information for log messages, see {@link LogEntryValue}
      * @param staticFields             a list of additional static fields for the GELF messages (key-value-delimiter
@@ -178,9 +328,189 @@ public final class GelfWriter implements Writer {
                       final String hostname,
                       final String[] additionalLogEntryValues,
                       final String[] staticFields) {
-        this(server, port, GelfTransports.valueOf(transport), hostname,
+        this(server, port, transport, hostname, additionalLogEntryValues, staticFields, 512, 1000, 500, -1, false);
+    }
+
+    /**
+     * Construct a new GelfWriter instance. This constructor is used when the writer is configured by properties and
+     * accepts {@code null} for all optional settings.
+     *
+     * @param server                   the hostname of the GELF-compatible server or a comma-separated list of
+     *                                 servers, each optionally followed by {@code :port}
+     * @param port                     the default port of the GELF-compatible servers
+     * @param transport                the transport protocol to use, {@code UDP}, {@code TCP} or
+     *                                 {@code TCP_GELFCLIENT} for the TCP transport of the GELF client library
+     * @param hostname                 the hostname of the application
+     * @param additionalLogEntryValues additional information for log messages, see {@link LogEntryValue}
+     * @param staticFields             a list of additional static fields for the GELF messages (key-value-delimiter
+     *                                 is ':')
+     * @param asyncBufferSize          the number of log entries which can be buffered for asynchronous sending;
+     *                                 a value of {@code 0} sends GELF messages on the logging thread.
+     * @param overflowPolicy           the behaviour if the queue is full, one of {@code BLOCK}, {@code DROP_NEWEST},
+     *                                 {@code DROP_OLDEST}, {@code DROP_BELOW_LEVEL(level)} or
+     *                                 {@code BLOCK_WITH_TIMEOUT(ms)}
+     * @param batchSize                the maximum number of GELF messages sent with a single write if the TCP
+     *                                 transport is used; a value greater than {@code 1} enables batching
+     * @param batchLingerMs            the maximum time to wait for a batch to fill up in milliseconds
+     * @param compression              the compression of GELF messages sent over UDP, one of {@code NONE},
+     *                                 {@code GZIP} or {@code ZLIB}, optionally followed by the compression level
+     *                                 and the minimum message size in bytes, e. g. {@code GZIP(6, 512)}
+     * @param flushTimeoutMs           the maximum time to wait for outstanding GELF messages when flushing in
+     *                                 milliseconds
+     * @param closeTimeoutMs           the maximum time to wait for outstanding GELF messages when closing in
+     *                                 milliseconds
+     * @param spoolDirectory           the directory to spool GELF messages to if the server is unreachable;
+     *                                 {@code null} disables spooling
+     * @param spoolMaxBytes            the maximum size of all spool files in bytes
+     * @param loadBalancing            the strategy for distributing GELF messages across several servers, one of
+     *                                 {@code ROUND_ROBIN}, {@code FAILOVER}, {@code LEAST_OUTSTANDING} or
+     *                                 {@code POWER_OF_TWO_CHOICES}
+     * @param rateLimit                the maximum number of log entries per second and level, optionally followed
+     *                                 by the burst size, e. g. {@code DEBUG(100, 1000), INFO(1000)};
+     *                                 {@code ERROR} cannot be limited
+     * @param deduplicationWindowMs    the time window in milliseconds in which identical log entries are collapsed into
+     *                                 a single GELF message with a {@code _repeat_count} field; {@code 0} disables
+     *                                 deduplication
+     * @param deduplicationCacheSize   the maximum number of distinct log entries tracked for deduplication
+     * @param maxStackDepth            the maximum number of rendered stack frames per exception, {@code 0} renders all
+     *                                 frames
+     * @param maxCauseDepth            the maximum number of rendered nested causes of an exception, {@code 0} renders
+     *                                 all causes
+     * @param stackTraceFilters        a list of package prefixes of stack frames which aren't rendered, e. g.
+     *                                 {@code sun.reflect.}
+     * @param maxFieldLength           the maximum size of a string field of a GELF message in bytes, {@code 0}
+     *                                 disables the limit
+     * @param maxMessageSize           the maximum size of a GELF message in bytes, {@code 0} disables the limit
+     * @param startupBufferSize        the number of log entries buffered while the transport is created in the
+     *                                 background, {@code 0} creates the transport synchronously in {@link #init(Configuration)}
+     * @param dnsRefreshIntervalMs     the time between two DNS lookups of the GELF-compatible servers in
+     *                                 milliseconds, {@code 0} resolves the servers only once
+     */
+    public GelfWriter(final String server,
+                      final int port,
+                      final String transport,
+                      final String hostname,
+                      final String[] additionalLogEntryValues,
+                      final String[] staticFields,
+                      final String asyncBufferSize,
+                      final String overflowPolicy,
+                      final String batchSize,
+                      final String batchLingerMs,
+                      final String compression,
+                      final String flushTimeoutMs,
+                      final String closeTimeoutMs,
+                      final String spoolDirectory,
+                      final String spoolMaxBytes,
+                      final String loadBalancing,
+                      final String rateLimit,
+                      final String deduplicationWindowMs,
+                      final String deduplicationCacheSize,
+                      final String maxStackDepth,
+                      final String maxCauseDepth,
+                      final String[] stackTraceFilters,
+                      final String maxFieldLength,
+                      final String maxMessageSize,
+                      final String startupBufferSize,
+                      final String dnsRefreshIntervalMs) {
+        this(server, port, buildTransport(transport), hostname,
                 buildLogEntryValuesFromString(additionalLogEntryValues), buildStaticFields(staticFields),
-                512, 1000, 500, -1, false);
+                512, 1000, 500, -1, false,
+                parseInt(asyncBufferSize, 0), OverflowPolicy.parse(overflowPolicy),
+                parseInt(batchSize, 1), parseInt(batchLingerMs, 5), Compression.parse(compression),
+                parseInt(flushTimeoutMs, DEFAULT_FLUSH_TIMEOUT), parseInt(closeTimeoutMs, DEFAULT_CLOSE_TIMEOUT),
+                buildFile(spoolDirectory), parseLong(spoolMaxBytes, DEFAULT_SPOOL_MAX_BYTES),
+                GelfLoadBalancingTransport.Strategy.parse(loadBalancing), RateLimiter.parse(rateLimit),
+                new Deduplicator(parseLong(deduplicationWindowMs, 0L),
+                        parseInt(deduplicationCacheSize, DEFAULT_DEDUPLICATION_CACHE_SIZE)),
+                parseInt(maxStackDepth, 0), parseInt(maxCauseDepth, 0), PackagePrefixFilter.of(stackTraceFilters),
+                parseInt(maxFieldLength, 0), parseInt(maxMessageSize, 0), parseInt(startupBufferSize, 0),
+                parseInt(dnsRefreshIntervalMs, 0), isGelfClientTransport(transport));
+    }
+
+    /**
+     * Construct a new GelfWriter instance using the default port ({@code 12201}). This constructor is used when the
+     * writer is configured by properties and accepts {@code null} for all optional settings.
+     *
+     * @param server                   the hostname of the GELF-compatible server or a comma-separated list of
+     *                                 servers, each optionally followed by {@code :port}
+     * @param transport                the transport protocol to use, {@code UDP}, {@code TCP} or
+     *                                 {@code TCP_GELFCLIENT} for the TCP transport of the GELF client library
+     * @param hostname                 the hostname of the application
+     * @param additionalLogEntryValues additional information for log messages, see {@link LogEntryValue}
+     * @param staticFields             a list of additional static fields for the GELF messages (key-value-delimiter
+     *                                 is ':')
+     * @param asyncBufferSize          the number of log entries which can be buffered for asynchronous sending;
+     *                                 a value of {@code 0} sends GELF messages on the logging thread.
+     * @param overflowPolicy           the behaviour if the queue is full, one of {@code BLOCK}, {@code DROP_NEWEST},
+     *                                 {@code DROP_OLDEST}, {@code DROP_BELOW_LEVEL(level)} or
+     *                                 {@code BLOCK_WITH_TIMEOUT(ms)}
+     * @param batchSize                the maximum number of GELF messages sent with a single write if the TCP
+     *                                 transport is used; a value greater than {@code 1} enables batching
+     * @param batchLingerMs            the maximum time to wait for a batch to fill up in milliseconds
+     * @param compression              the compression of GELF messages sent over UDP, one of {@code NONE},
+     *                                 {@code GZIP} or {@code ZLIB}, optionally followed by the compression level
+     *                                 and the minimum message size in bytes, e. g. {@code GZIP(6, 512)}
+     * @param flushTimeoutMs           the maximum time to wait for outstanding GELF messages when flushing in
+     *                                 milliseconds
+     * @param closeTimeoutMs           the maximum time to wait for outstanding GELF messages when closing in
+     *                                 milliseconds
+     * @param spoolDirectory           the directory to spool GELF messages to if the server is unreachable;
+     *                                 {@code null} disables spooling
+     * @param spoolMaxBytes            the maximum size of all spool files in bytes
+     * @param loadBalancing            the strategy for distributing GELF messages across several servers, one of
+     *                                 {@code ROUND_ROBIN}, {@code FAILOVER}, {@code LEAST_OUTSTANDING} or
+     *                                 {@code POWER_OF_TWO_CHOICES}
+     * @param rateLimit                the maximum number of log entries per second and level, optionally followed
+     *                                 by the burst size, e. g. {@code DEBUG(100, 1000), INFO(1000)};
+     *                                 {@code ERROR} cannot be limited
+     * @param deduplicationWindowMs    the time window in milliseconds in which identical log entries are collapsed into
+     *                                 a single GELF message with a {@code _repeat_count} field; {@code 0} disables
+     *                                 deduplication
+     * @param deduplicationCacheSize   the maximum number of distinct log entries tracked for deduplication
+     * @param maxStackDepth            the maximum number of rendered stack frames per exception, {@code 0} renders all
+     *                                 frames
+     * @param maxCauseDepth            the maximum number of rendered nested causes of an exception, {@code 0} renders
+     *                                 all causes
+     * @param stackTraceFilters        a list of package prefixes of stack frames which aren't rendered, e. g.
+     *                                 {@code sun.reflect.}
+     * @param maxFieldLength           the maximum size of a string field of a GELF message in bytes, {@code 0}
+     *                                 disables the limit
+     * @param maxMessageSize           the maximum size of a GELF message in bytes, {@code 0} disables the limit
+     * @param startupBufferSize        the number of log entries buffered while the transport is created in the
+     *                                 background, {@code 0} creates the transport synchronously in {@link #init(Configuration)}
+     * @param dnsRefreshIntervalMs     the time between two DNS lookups of the GELF-compatible servers in
+     *                                 milliseconds, {@code 0} resolves the servers only once
+     */
+    public GelfWriter(final String server,
+                      final String transport,
+                      final String hostname,
+                      final String[] additionalLogEntryValues,
+                      final String[] staticFields,
+                      final String asyncBufferSize,
+                      final String overflowPolicy,
+                      final String batchSize,
+                      final String batchLingerMs,
+                      final String compression,
+                      final String flushTimeoutMs,
+                      final String closeTimeoutMs,
+                      final String spoolDirectory,
+                      final String spoolMaxBytes,
+                      final String loadBalancing,
+                      final String rateLimit,
+                      final String deduplicationWindowMs,
+                      final String deduplicationCacheSize,
+                      final String maxStackDepth,
+                      final String maxCauseDepth,
+                      final String[] stackTraceFilters,
+                      final String maxFieldLength,
+                      final String maxMessageSize,
+                      final String startupBufferSize,
+                      final String dnsRefreshIntervalMs) {
+        this(server, DEFAULT_PORT, transport, hostname, additionalLogEntryValues, staticFields,
+                asyncBufferSize, overflowPolicy, batchSize, batchLingerMs, compression, flushTimeoutMs,
+                closeTimeoutMs, spoolDirectory, spoolMaxBytes, loadBalancing, rateLimit, deduplicationWindowMs,
+                deduplicationCacheSize, maxStackDepth, maxCauseDepth, stackTraceFilters, maxFieldLength,
+                maxMessageSize, startupBufferSize, dnsRefreshIntervalMs);
     }
 
     /**
@@ -188,7 +518,8 @@ public final class GelfWriter implements Writer {
      *
      * @param server                   the hostname of the GELF-compatible server
      * @param port                     the port of the GELF-compatible server
-     * @param transport                the transport protocol to use
+     * @param transport                the transport protocol to use, {@code UDP}, {@code TCP} or
+     *                                 {@code TCP_GELFCLIENT} for the TCP transport of the GELF client library
      * @param hostname                 the hostname of the application
      * @param additionalLogEntryValues additional information for log messages, see {@link LogEntryValue}
      * @param staticFields             a list of additional static fields for the GELF messages (key-value-delimiter
@@ -212,13 +543,40 @@ public final class GelfWriter implements Writer {
                       final int reconnectDelay,
                       final int sendBufferSize,
                       final boolean tcpNoDelay) {
-        this(server, port, GelfTransports.valueOf(transport), hostname,
+        this(server, port, buildTransport(transport), hostname,
                 buildLogEntryValuesFromString(additionalLogEntryValues), buildStaticFields(staticFields),
-                queueSize, connectTimeout, reconnectDelay, sendBufferSize, tcpNoDelay);
+                queueSize, connectTimeout, reconnectDelay, sendBufferSize, tcpNoDelay,
+                isGelfClientTransport(transport));
+    }
+
+    private static GelfTransports buildTransport(String transport) {
+        if (isGelfClientTransport(transport)) {
+            return GelfTransports.TCP;
+        }
+        return null == transport ? GelfTransports.UDP : GelfTransports.valueOf(transport);
+    }
+
+    private static boolean isGelfClientTransport(String transport) {
+        return GELFCLIENT_TCP_TRANSPORT.equals(transport);
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        return null == value || value.trim().isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        return null == value || value.trim().isEmpty() ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    private static File buildFile(String path) {
+        return null == path || path.trim().isEmpty() ? null : new File(path.trim());
     }
 
     private static EnumSet<LogEntryValue> buildLogEntryValuesFromString(String... logEntryValues) {
         final EnumSet<LogEntryValue> result = EnumSet.noneOf(LogEntryValue.class);
+        if (null == logEntryValues) {
+            return result;
+        }
 
         for (String logEntryValue : logEntryValues) {
             result.add(LogEntryValue.valueOf(logEntryValue));
@@ -249,18 +607,6 @@ public final class GelfWriter implements Writer {
         return result;
     }
 
-    private String buildHostName(final String hostname) {
-        if (null == hostname || hostname.isEmpty()) {
-            try {
-                return InetAddress.getLocalHost().getHostName();
-            } catch (UnknownHostException e) {
-                return "localhost";
-            }
-        }
-
-        return hostname;
-    }
-
     /**
      * {@inheritDoc}
      */
@@ -274,7 +620,211 @@ public final class GelfWriter implements Writer {
      */
     @Override
     public void init(Configuration configuration) throws Exception {
-        final InetSocketAddress remoteAddress = new InetSocketAddress(server, port);
+        init(configuration, new TransportFactory() {
+            @Override
+            public GelfTransport create(final DnsRefresher refresher) throws IOException {
+                return createTransport(parseEndpoints(server, port), refresher);
+            }
+        });
+    }
+
+    /**
+     * Initialize the writer with the given factory for the transport, which allows tests to replace the transport.
+     */
+    void init(final Configuration configuration, final TransportFactory factory) throws Exception {
+        transportFactory = factory;
+        if (startupBufferSize > 0) {
+            startupBuffer = new StartupBuffer(startupBufferSize, overflowPolicy);
+            starter = new Thread(new Starter(), "tinylog-gelf-starter");
+            starter.setDaemon(true);
+            starter.start();
+        } else {
+            start();
+        }
+
+        metrics.register();
+        VMShutdownHook.register(this);
+    }
+
+    /**
+     * Create the transport and the asynchronous dispatcher. Resolving the servers and connecting to them may take a
+     * while, so this happens on the {@link Starter} thread if a startup buffer has been configured.
+     */
+    private void start() throws IOException {
+        final DnsRefresher refresher = dnsRefreshIntervalMs > 0 ? new DnsRefresher(dnsRefreshIntervalMs) : null;
+        final GelfTransport gelfClient = transportFactory.create(refresher);
+        synchronized (startLock) {
+            if (closed) {
+                gelfClient.stop();
+                return;
+            }
+
+            if (asyncBufferSize > 0) {
+                dispatcher = new AsyncDispatcher(this, gelfClient, asyncBufferSize, overflowPolicy);
+                dispatcher.start();
+            }
+            client = gelfClient;
+            if (null != refresher && !refresher.isEmpty()) {
+                dnsRefresher = refresher;
+                refresher.start();
+            }
+        }
+    }
+
+    /**
+     * Creates the transport of a writer.
+     */
+    interface TransportFactory {
+        /**
+         * @param refresher the refresher to register the transports with, {@code null} if DNS refreshing is disabled
+         * @return the transport to send GELF messages with
+         */
+        GelfTransport create(DnsRefresher refresher) throws IOException;
+    }
+
+    /**
+     * Creates the transport in the background and sends the log entries which have been buffered in the meantime.
+     */
+    private final class Starter implements Runnable {
+        @Override
+        public void run() {
+            final StartupBuffer buffer = startupBuffer;
+            try {
+                start();
+            } catch (Exception e) {
+                final int discarded = buffer.discard();
+                startupBuffer = null;
+                InternalLogger.error(e, "Couldn't create transport for GELF server " + server + ", " + discarded
+                        + " buffered log entries have been dropped");
+                return;
+            }
+
+            LogEntry logEntry;
+            while ((logEntry = buffer.poll()) != null) {
+                try {
+                    forward(logEntry);
+                } catch (InterruptedException e) {
+                    buffer.discard();
+                    break;
+                } catch (Exception e) {
+                    InternalLogger.error(e, "Couldn't send buffered log entry to GELF server " + server);
+                }
+            }
+            startupBuffer = null;
+        }
+    }
+
+    /**
+     * Parse a comma-separated list of GELF-compatible servers, each optionally followed by a port, e. g.
+     * {@code graylog1.example.com,graylog2.example.com:12202,[::1]:12203}.
+     */
+    static List<InetSocketAddress> parseEndpoints(final String servers, final int defaultPort) {
+        final List<InetSocketAddress> endpoints = new ArrayList<>();
+        for (String endpoint : servers.split(",")) {
+            final String trimmed = endpoint.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+
+            String host = trimmed;
+            int endpointPort = defaultPort;
+            if (trimmed.startsWith("[")) {
+                final int end = trimmed.indexOf(']');
+                if (end == -1) {
+                    throw new IllegalArgumentException("Invalid server " + trimmed);
+                }
+                host = trimmed.substring(1, end);
+                if (end + 1 < trimmed.length()) {
+                    if (trimmed.charAt(end + 1) != ':') {
+                        throw new IllegalArgumentException("Invalid server " + trimmed);
+                    }
+                    endpointPort = Integer.parseInt(trimmed.substring(end + 2));
+                }
+            } else {
+                // More than one colon means an IPv6 address without port
+                final int colon = trimmed.indexOf(':');
+                if (colon != -1 && colon == trimmed.lastIndexOf(':')) {
+                    host = trimmed.substring(0, colon);
+                    endpointPort = Integer.parseInt(trimmed.substring(colon + 1));
+                }
+            }
+            endpoints.add(new InetSocketAddress(host, endpointPort));
+        }
+
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("No server configured");
+        }
+        return endpoints;
+    }
+
+    /**
+     * @param refresher the refresher to register the transports with, {@code null} if DNS refreshing is disabled
+     */
+    private GelfTransport createTransport(final List<InetSocketAddress> endpoints, final DnsRefresher refresher)
+            throws IOException {
+        final GelfTransport networkTransport;
+        if (endpoints.size() == 1) {
+            networkTransport = createNetworkTransport(endpoints.get(0), null != spoolDirectory);
+            addToRefresher(refresher, endpoints.get(0), networkTransport);
+            if (networkTransport instanceof HealthTrackingTransport) {
+                endpointHealth = new EndpointHealth[]{((HealthTrackingTransport) networkTransport).getHealth()};
+            }
+        } else {
+            final List<GelfFrameTransport> transports = new ArrayList<>(endpoints.size());
+            try {
+                for (InetSocketAddress endpoint : endpoints) {
+                    final GelfTransport endpointTransport = createNetworkTransport(endpoint, true);
+                    transports.add((GelfFrameTransport) endpointTransport);
+                    addToRefresher(refresher, endpoint, endpointTransport);
+                }
+            } catch (IOException | RuntimeException e) {
+                for (GelfFrameTransport transport : transports) {
+                    transport.stop();
+                }
+                throw e;
+            }
+            final GelfLoadBalancingTransport loadBalancingTransport =
+                    new GelfLoadBalancingTransport(transports, loadBalancing);
+            endpointHealth = loadBalancingTransport.getHealth();
+            networkTransport = loadBalancingTransport;
+        }
+
+        if (null != spoolDirectory && networkTransport instanceof GelfFrameTransport) {
+            return new GelfSpoolTransport((GelfFrameTransport) networkTransport, spoolDirectory, spoolMaxBytes);
+        }
+        return networkTransport;
+    }
+
+    private static void addToRefresher(final DnsRefresher refresher,
+                                       final InetSocketAddress endpoint,
+                                       final GelfTransport endpointTransport) {
+        if (null == refresher) {
+            return;
+        }
+
+        if (endpointTransport instanceof RedirectableTransport) {
+            refresher.add(endpoint, (RedirectableTransport) endpointTransport);
+        } else {
+            // The transport of the GELF client library resolves the server once and can't be redirected
+            InternalLogger.warn("Couldn't refresh the address of GELF server " + endpoint
+                    + ", its transport doesn't support it");
+        }
+    }
+
+    /**
+     * @param framesRequired {@code true} if the transport has to implement {@link GelfFrameTransport}
+     */
+    private GelfTransport createNetworkTransport(final InetSocketAddress remoteAddress, final boolean framesRequired)
+            throws IOException {
+        if (transport == GelfTransports.UDP) {
+            return new GelfUdpChannelTransport(remoteAddress, sendBufferSize, UDP_BUFFER_POOL_SIZE, compression,
+                    reconnectDelay);
+        } else if (transport == GelfTransports.TCP && (!gelfClientTransport
+                || batchSize > 1 || framesRequired || dnsRefreshIntervalMs > 0 || maxMessageSize > 0)) {
+            return new GelfTcpBatchTransport(remoteAddress, queueSize, connectTimeout, reconnectDelay,
+                    sendBufferSize, tcpNoDelay, batchSize, batchLingerMs);
+        }
+
         final GelfConfiguration gelfConfiguration = new GelfConfiguration(remoteAddress)
                 .transport(transport)
                 .queueSize(queueSize)
@@ -283,9 +833,10 @@ public final class GelfWriter implements Writer {
                 .sendBufferSize(sendBufferSize)
                 .tcpNoDelay(tcpNoDelay);
 
-        client = GelfTransports.create(gelfConfiguration);
-
-        VMShutdownHook.register(this);
+        if (transport == GelfTransports.TCP) {
+            return new GelfTcpClientTransport(gelfConfiguration);
+        }
+        return GelfTransports.create(gelfConfiguration);
     }
 
     /**
@@ -293,41 +844,132 @@ public final class GelfWriter implements Writer {
      */
     @Override
     public void write(final LogEntry logEntry) throws Exception {
-        write(client, logEntry);
+        final boolean duplicate = deduplicator.isDuplicate(logEntry);
+        writeRepeatedLogEntries(false);
+        if (duplicate) {
+            return;
+        }
+
+        final boolean permitted = rateLimit.tryAcquire(logEntry.getLevel());
+        writeSuppressionSummary(false);
+        if (permitted) {
+            dispatch(logEntry);
+        }
+    }
+
+    private void dispatch(final LogEntry logEntry) throws Exception {
+        final StartupBuffer buffer = startupBuffer;
+        if (buffer == null || !buffer.offer(logEntry)) {
+            forward(logEntry);
+        }
+    }
+
+    private void forward(final LogEntry logEntry) throws Exception {
+        final AsyncDispatcher currentDispatcher = dispatcher;
+        final GelfTransport gelfClient = client;
+        if (currentDispatcher != null) {
+            currentDispatcher.enqueue(logEntry);
+        } else if (gelfClient != null) {
+            write(gelfClient, logEntry);
+        } else {
+            // The transport couldn't be created in the background
+            overflowPolicy.dropped();
+        }
+    }
+
+    /**
+     * Write the log entries whose repetitions have been suppressed by deduplication, if their time window has closed
+     * or {@code force} is {@code true}.
+     * <p>
+     * These log entries are dispatched like any other log entry, the repeat count is looked up again when they are
+     * encoded. This happens at most once per time window and log entry.
+     */
+    private void writeRepeatedLogEntries(final boolean force) throws Exception {
+        if (!deduplicator.isEnabled()) {
+            return;
+        }
+
+        deduplicator.sweep(force);
+        Deduplicator.Repeated repeated;
+        while ((repeated = deduplicator.pollExpired()) != null) {
+            dispatch(repeated.getLogEntry());
+        }
+    }
+
+    /**
+     * Write a synthetic log entry reporting the number of log entries suppressed by rate limiting, if the summary
+     * interval has elapsed or {@code force} is {@code true}.
+     */
+    private void writeSuppressionSummary(final boolean force) throws Exception {
+        final String summary = rateLimit.pollSummary(force);
+        if (null != summary) {
+            dispatch(new LogEntry(new Date(), null, null, null, null, null, -1, Level.WARNING, summary, null));
+        }
     }
 
     void write(final GelfTransport gelfClient, final LogEntry logEntry) throws Exception {
+        write(gelfClient, logEntry, overflowPolicy);
+    }
+
+    void write(final GelfTransport gelfClient, final LogEntry logEntry, final OverflowPolicy policy) throws Exception {
+        write(gelfClient, logEntry, deduplicator.repeatCount(logEntry), policy);
+    }
+
+    private void write(final GelfTransport gelfClient,
+                       final LogEntry logEntry,
+                       final long repeatCount,
+                       final OverflowPolicy policy) throws Exception {
+        if (gelfClient instanceof GelfFrameTransport) {
+            final JsonBuffer buffer = buffers.get();
+            buffer.reset();
+            final long start = System.nanoTime();
+            if (encoder.encode(logEntry, repeatCount, buffer)) {
+                truncatedMessages.incrementAndGet();
+            }
+            final long encoded = System.nanoTime();
+            metrics.recordEncode(encoded - start);
+            if (send(gelfClient, null, buffer, logEntry.getLevel(), policy)) {
+                metrics.recordSend(System.nanoTime() - encoded, buffer.size());
+            }
+            return;
+        }
+
         final String message = logEntry.getRenderedLogEntry() == null ? logEntry.getMessage() : logEntry.getRenderedLogEntry();
-        final GelfMessageBuilder messageBuilder = new GelfMessageBuilder(message, hostname)
+        final long start = System.nanoTime();
+        final StringLimit limit = new StringLimit(maxStringLength);
+        final String shortMessage = limit.apply(message);
+        final GelfMessageBuilder messageBuilder = new GelfMessageBuilder(shortMessage, hostname.get())
                 .timestamp(logEntry.getDate().getTime() / 1000d)
-                .level(toGelfMessageLevel(logEntry.getLevel()))
+                .level(GelfEncoder.toGelfMessageLevel(logEntry.getLevel()))
                 .additionalFields(staticFields);
 
         final String processId = logEntry.getProcessId();
         if (null != processId) {
-            messageBuilder.additionalField("processId", processId);
+            messageBuilder.additionalField("processId", limit.apply(processId));
         }
 
         final Thread thread = logEntry.getThread();
         if (null != thread) {
-            messageBuilder.additionalField("threadName", thread.getName());
-            messageBuilder.additionalField("threadGroup", thread.getThreadGroup().getName());
+            messageBuilder.additionalField("threadName", limit.apply(thread.getName()));
+            // Terminated threads don't have a thread group anymore, e. g. when sending asynchronously
+            final ThreadGroup group = thread.getThreadGroup();
+            messageBuilder.additionalField("threadGroup", group == null ? null : limit.apply(group.getName()));
             messageBuilder.additionalField("threadPriority", thread.getPriority());
         }
 
         final String className = logEntry.getClassName();
         if (null != className) {
-            messageBuilder.additionalField("sourceClassName", className);
+            messageBuilder.additionalField("sourceClassName", limit.apply(className));
         }
 
         final String methodName = logEntry.getMethodName();
         if (null != methodName) {
-            messageBuilder.additionalField("sourceMethodName", methodName);
+            messageBuilder.additionalField("sourceMethodName", limit.apply(methodName));
         }
 
         final String fileName = logEntry.getFilename();
         if (null != fileName) {
-            messageBuilder.additionalField("sourceFileName", fileName);
+            messageBuilder.additionalField("sourceFileName", limit.apply(fileName));
         }
 
         final int lineNumber = logEntry.getLineNumber();
@@ -338,45 +980,248 @@ public final class GelfWriter implements Writer {
         @SuppressWarnings("all")
         final Throwable throwable = logEntry.getException();
         if (null != throwable) {
-            final StringBuilder stackTraceBuilder = new StringBuilder();
-            for (StackTraceElement stackTraceElement : throwable.getStackTrace()) {
-                new Formatter(stackTraceBuilder)
-                        .format("%s.%s(%s:%d)%n",
-                                stackTraceElement.getClassName(), stackTraceElement.getMethodName(),
-                                stackTraceElement.getFileName(), stackTraceElement.getLineNumber());
-            }
+            // Truncate the stack trace before joining it with the message, so that it isn't copied in full again
+            final String stackTrace = limit.apply(stackTraceRenderer.render(throwable));
 
             messageBuilder.additionalField("exceptionClass", throwable.getClass().getCanonicalName());
-            messageBuilder.additionalField("exceptionMessage", throwable.getMessage());
-            messageBuilder.additionalField("exceptionStackTrace", stackTraceBuilder.toString());
-            messageBuilder.fullMessage(message + "\n\n" + stackTraceBuilder.toString());
+            messageBuilder.additionalField("exceptionMessage", limit.apply(throwable.getMessage()));
+            messageBuilder.additionalField("exceptionStackTrace", stackTrace);
+            messageBuilder.fullMessage(limit.apply(shortMessage + "\n\n" + stackTrace));
+        }
+
+        if (repeatCount > 0L) {
+            messageBuilder.additionalField("repeat_count", repeatCount);
+        }
+
+        if (limit.truncated) {
+            truncatedMessages.incrementAndGet();
+            messageBuilder.additionalField("truncated", true);
+        }
+
+        final GelfMessage gelfMessage = messageBuilder.build();
+        final long encoded = System.nanoTime();
+        metrics.recordEncode(encoded - start);
+        if (send(gelfClient, gelfMessage, null, logEntry.getLevel(), policy)) {
+            metrics.recordSend(System.nanoTime() - encoded, 0);
+        }
+    }
+
+    /**
+     * Truncates string fields of GELF messages built with the {@link GelfMessageBuilder} the same way the
+     * {@link GelfEncoder} does, i. e. to the given number of bytes of escaped JSON string content.
+     */
+    private static final class StringLimit {
+        private final int maxBytes;
+        private boolean truncated;
+
+        private StringLimit(final int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        private String apply(final String value) {
+            if (null == value || maxBytes == 0) {
+                return value;
+            }
+
+            final int end = JsonBuffer.truncationIndex(value, maxBytes);
+            if (end == value.length()) {
+                return value;
+            }
+            truncated = true;
+            return value.substring(0, end);
+        }
+    }
+
+    /**
+     * Send either a {@link GelfMessage} or an encoded frame, applying the given {@link OverflowPolicy} if the
+     * transport doesn't accept the message immediately.
+     *
+     * @return {@code true} if the message has been handed to the transport, {@code false} if it has been dropped
+     */
+    private static boolean send(final GelfTransport gelfClient,
+                             final GelfMessage message,
+                             final JsonBuffer frame,
+                             final Level level,
+                             final OverflowPolicy policy) throws InterruptedException {
+        if (policy.blocks(level)) {
+            if (null == frame) {
+                gelfClient.send(message);
+            } else {
+                ((GelfFrameTransport) gelfClient).send(frame.array(), 0, frame.size());
+            }
+            return true;
+        }
+
+        if (trySend(gelfClient, message, frame)) {
+            return true;
         }
 
-        gelfClient.send(messageBuilder.build());
+        if (policy.getType() == OverflowPolicy.Type.BLOCK_WITH_TIMEOUT) {
+            final long deadline = System.nanoTime() + policy.getTimeoutNanos();
+            int tries = 0;
+            while (System.nanoTime() - deadline < 0L) {
+                tries = AsyncDispatcher.backOff(tries);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (trySend(gelfClient, message, frame)) {
+                    return true;
+                }
+            }
+        }
+
+        policy.dropped();
+        return false;
     }
 
-    private GelfMessageLevel toGelfMessageLevel(final Level level) {
-        switch (level) {
-            case TRACE:
-            case DEBUG:
-                return GelfMessageLevel.DEBUG;
-            case INFO:
-                return GelfMessageLevel.INFO;
-            case WARNING:
-                return GelfMessageLevel.WARNING;
-            case ERROR:
-                return GelfMessageLevel.ERROR;
-            default:
-                throw new IllegalArgumentException("Invalid log level " + level);
+    private static boolean trySend(final GelfTransport gelfClient, final GelfMessage message, final JsonBuffer frame) {
+        if (null == frame) {
+            return gelfClient.trySend(message);
+        } else {
+            return ((GelfFrameTransport) gelfClient).trySend(frame.array(), 0, frame.size());
         }
     }
 
+    /**
+     * Returns the number of GELF messages which have been dropped by the {@link OverflowPolicy} because the queue
+     * was full.
+     *
+     * @return the number of dropped messages
+     */
+    public long getDroppedMessages() {
+        return overflowPolicy.getDroppedMessages();
+    }
+
+    /**
+     * Returns the number of log entries which have been suppressed by rate limiting.
+     *
+     * @return the number of suppressed log entries
+     */
+    public long getSuppressedMessages() {
+        return rateLimit.getSuppressedMessages();
+    }
+
+    /**
+     * Returns the number of GELF messages which have been truncated because they exceeded the maximum field length
+     * or the maximum message size.
+     *
+     * @return the number of truncated messages
+     */
+    public long getTruncatedMessages() {
+        return truncatedMessages.get();
+    }
+
+    /**
+     * @return the transport to send GELF messages with, {@code null} if it hasn't been created (yet)
+     */
+    GelfTransport getTransport() {
+        return client;
+    }
+
+    /**
+     * Returns the number of log entries and GELF messages which are queued in the asynchronous dispatcher or the
+     * transport but haven't been sent yet.
+     *
+     * @return the number of queued log entries and GELF messages
+     */
+    public long getQueueDepth() {
+        final StartupBuffer buffer = startupBuffer;
+        final AsyncDispatcher currentDispatcher = dispatcher;
+        final GelfTransport gelfClient = client;
+        long queued = 0L;
+        if (buffer != null) {
+            queued += buffer.size();
+        }
+        if (currentDispatcher != null) {
+            queued += currentDispatcher.size();
+        }
+        if (gelfClient instanceof FlushableGelfTransport) {
+            queued += ((FlushableGelfTransport) gelfClient).getPendingMessages();
+        }
+        return queued;
+    }
+
+    /**
+     * Returns the health of the GELF-compatible servers, if the transport tracks it.
+     *
+     * @return the health of every server, empty if the transport doesn't track the health of the servers
+     */
+    public EndpointHealth[] getEndpointHealth() {
+        return endpointHealth.clone();
+    }
+
+    /**
+     * Returns the metrics of this writer, which are also available as MBean once the writer has been initialized.
+     *
+     * @return the metrics of this writer
+     */
+    public GelfWriterMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void flush() throws Exception {
+        final long outstanding = flush(flushTimeoutMs);
+        if (outstanding > 0L) {
+            InternalLogger.warn(outstanding + " GELF messages haven't been sent within " + flushTimeoutMs + " ms");
+        }
+    }
 
+    /**
+     * Wait until all log entries which have been written before calling this method have been sent to the
+     * GELF-compatible server, or until the timeout has elapsed.
+     *
+     * @param timeoutMillis the maximum time to wait in milliseconds
+     * @return the number of log entries which are still outstanding
+     * @throws InterruptedException if interrupted while waiting
+     */
+    long flush(final long timeoutMillis) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long outstanding = 0L;
+        if (starter != null && timeoutMillis > 0L) {
+            starter.join(Math.max(1L, remainingMillis(deadline)));
+        }
+        final StartupBuffer buffer = startupBuffer;
+        if (buffer != null) {
+            outstanding += buffer.size();
+        }
+        final AsyncDispatcher currentDispatcher = dispatcher;
+        if (currentDispatcher != null) {
+            outstanding += currentDispatcher.flush(remainingMillis(deadline));
+        }
+        final GelfTransport gelfClient = client;
+        if (gelfClient instanceof FlushableGelfTransport) {
+            outstanding += ((FlushableGelfTransport) gelfClient).flush(remainingMillis(deadline));
+        }
+        return outstanding;
+    }
+
+    /**
+     * Stop the transport, but wait for it at most for the given time. Stopping the transport of the GELF client
+     * library isn't bounded and the built-in TCP transport tries to send its last batch, so the transport is stopped
+     * on a separate thread.
+     */
+    private void stopTransport(final GelfTransport gelfClient, final long timeoutMillis) throws InterruptedException {
+        final Thread stopper = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                gelfClient.stop();
+            }
+        }, "tinylog-gelf-stopper");
+        stopper.setDaemon(true);
+        stopper.start();
+        stopper.join(timeoutMillis);
+        if (stopper.isAlive()) {
+            InternalLogger.warn("Couldn't stop transport for GELF server " + server + " within " + closeTimeoutMs
+                    + " ms, stopping it in the background");
+        }
+    }
+
+    private static long remainingMillis(final long deadline) {
+        return Math.max(0L, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
     }
 
     /**
@@ -385,8 +1230,47 @@ public final class GelfWriter implements Writer {
     @Override
     public void close() throws Exception {
         VMShutdownHook.unregister(this);
-        if (client != null) {
-            client.stop();
+
+        // The dispatcher and the transport keep sending concurrently while waiting for them
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(closeTimeoutMs);
+        try {
+            if (starter != null) {
+                starter.join(Math.max(1L, remainingMillis(deadline)));
+            }
+            writeRepeatedLogEntries(true);
+            writeSuppressionSummary(true);
+            flush(remainingMillis(deadline));
+        } finally {
+            synchronized (startLock) {
+                closed = true;
+            }
+            final StartupBuffer buffer = startupBuffer;
+            if (buffer != null) {
+                buffer.discard();
+            }
+            if (dnsRefresher != null) {
+                dnsRefresher.stop();
+            }
+            if (dispatcher != null) {
+                dispatcher.stop(Math.max(1L, remainingMillis(deadline)));
+            }
+            if (client != null) {
+                stopTransport(client, Math.max(1L, remainingMillis(deadline)));
+            }
+            compression.close();
+            metrics.unregister();
+        }
+
+        final long outstanding = flush(0L);
+        final long dropped = getDroppedMessages();
+        final GelfTransport gelfClient = client;
+        final long droppedByTransport = gelfClient instanceof DroppingTransport
+                ? ((DroppingTransport) gelfClient).getDroppedMessages() : 0L;
+        if (outstanding > 0L || dropped > 0L || droppedByTransport > 0L) {
+            InternalLogger.warn((outstanding + dropped + droppedByTransport) + " GELF messages have been lost ("
+                    + outstanding + " not sent within " + closeTimeoutMs + " ms when closing, " + dropped
+                    + " dropped by overflow policy " + overflowPolicy + ", " + droppedByTransport
+                    + " dropped by the transport)");
         }
     }
 }
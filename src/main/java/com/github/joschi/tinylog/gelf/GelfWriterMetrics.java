@@ -0,0 +1,239 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.pmw.tinylog.InternalLogger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of a single {@link GelfWriter}.
+ * <p>
+ * Once the writer has been initialized, the metrics are registered as MBean with the name
+ * {@code com.github.joschi.tinylog.gelf:type=GelfWriter,server="<server>",instance=<n>} and handed to all
+ * {@link GelfMetricsExporter}s found on the class path.
+ * <p>
+ * The counters are plain {@link AtomicLong}s (there is no {@code LongAdder} in Java 7). In asynchronous mode, the
+ * written messages and the latencies are only updated by the dispatcher thread, but the dropped messages are counted
+ * by the logging threads which couldn't enqueue their log entries.
+ */
+public final class GelfWriterMetrics implements GelfWriterMetricsMBean {
+    private static final String DOMAIN = "com.github.joschi.tinylog.gelf";
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final GelfWriter writer;
+    private final String server;
+    private final int instance;
+    private final AtomicLong writtenMessages = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private final LatencyHistogram encodeLatency = new LatencyHistogram();
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+    private final List<GelfMetricsExporter> exporters = new ArrayList<>();
+    private ObjectName objectName;
+
+    GelfWriterMetrics(final GelfWriter writer, final String server) {
+        this.writer = writer;
+        this.server = server;
+        this.instance = INSTANCES.incrementAndGet();
+    }
+
+    /**
+     * Register the metrics as MBean and with all {@link GelfMetricsExporter}s. Failures are logged but don't prevent
+     * the writer from working.
+     */
+    synchronized void register() {
+        try {
+            final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(DOMAIN + ":type=GelfWriter,server=" + ObjectName.quote(server)
+                    + ",instance=" + instance);
+            mBeanServer.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException | RuntimeException e) {
+            InternalLogger.warn(e, "Couldn't register MBean for GELF writer metrics");
+        }
+
+        try {
+            for (GelfMetricsExporter exporter : ServiceLoader.load(GelfMetricsExporter.class)) {
+                try {
+                    exporter.register(this);
+                    exporters.add(exporter);
+                } catch (RuntimeException e) {
+                    InternalLogger.warn(e, "Couldn't export GELF writer metrics to " + exporter);
+                }
+            }
+        } catch (ServiceConfigurationError e) {
+            InternalLogger.warn(e, "Couldn't load GELF metrics exporters");
+        }
+    }
+
+    synchronized void unregister() {
+        for (GelfMetricsExporter exporter : exporters) {
+            try {
+                exporter.unregister(this);
+            } catch (RuntimeException e) {
+                InternalLogger.warn(e, "Couldn't unregister GELF writer metrics from " + exporter);
+            }
+        }
+        exporters.clear();
+
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException | RuntimeException e) {
+                InternalLogger.warn(e, "Couldn't unregister MBean " + objectName);
+            }
+            objectName = null;
+        }
+    }
+
+    void recordEncode(final long nanos) {
+        encodeLatency.record(nanos);
+    }
+
+    /**
+     * @param nanos the time it took to hand the GELF message to the transport
+     * @param bytes the size of the encoded GELF message, {@code 0} if the transport encodes it
+     */
+    void recordSend(final long nanos, final int bytes) {
+        sendLatency.record(nanos);
+        writtenMessages.incrementAndGet();
+        if (bytes > 0) {
+            writtenBytes.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * Returns the name of the MBean.
+     *
+     * @return the name of the MBean, {@code null} if the metrics aren't registered as MBean
+     */
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Returns a number which distinguishes several writers sending to the same server.
+     *
+     * @return the instance number of the writer
+     */
+    public int getInstance() {
+        return instance;
+    }
+
+    @Override
+    public String getServer() {
+        return server;
+    }
+
+    @Override
+    public long getWrittenMessages() {
+        return writtenMessages.get();
+    }
+
+    @Override
+    public long getWrittenBytes() {
+        return writtenBytes.get();
+    }
+
+    @Override
+    public long getDroppedMessages() {
+        return writer.getDroppedMessages();
+    }
+
+    @Override
+    public long getSuppressedMessages() {
+        return writer.getSuppressedMessages();
+    }
+
+    @Override
+    public long getTruncatedMessages() {
+        return writer.getTruncatedMessages();
+    }
+
+    @Override
+    public long getQueueDepth() {
+        return writer.getQueueDepth();
+    }
+
+    @Override
+    public long getReconnects() {
+        long reconnects = 0L;
+        for (EndpointHealth health : writer.getEndpointHealth()) {
+            reconnects += Math.max(0L, health.getConnections() - 1L);
+        }
+        return reconnects;
+    }
+
+    @Override
+    public int getUnavailableServers() {
+        int unavailable = 0;
+        for (EndpointHealth health : writer.getEndpointHealth()) {
+            if (health.getState() != EndpointHealth.State.CLOSED) {
+                unavailable++;
+            }
+        }
+        return unavailable;
+    }
+
+    /**
+     * Returns the distribution of the time it took to encode GELF messages.
+     *
+     * @return the encode latency histogram
+     */
+    public LatencyHistogram getEncodeLatency() {
+        return encodeLatency;
+    }
+
+    /**
+     * Returns the distribution of the time it took to hand GELF messages to the transport.
+     *
+     * @return the send latency histogram
+     */
+    public LatencyHistogram getSendLatency() {
+        return sendLatency;
+    }
+
+    @Override
+    public double getEncodeLatencyMeanNanos() {
+        return encodeLatency.getMean();
+    }
+
+    @Override
+    public long getEncodeLatency99thPercentileNanos() {
+        return encodeLatency.getValueAtPercentile(99d);
+    }
+
+    @Override
+    public long getEncodeLatencyMaxNanos() {
+        return encodeLatency.getMax();
+    }
+
+    @Override
+    public double getSendLatencyMeanNanos() {
+        return sendLatency.getMean();
+    }
+
+    @Override
+    public long getSendLatency99thPercentileNanos() {
+        return sendLatency.getValueAtPercentile(99d);
+    }
+
+    @Override
+    public long getSendLatencyMaxNanos() {
+        return sendLatency.getMax();
+    }
+
+    @Override
+    public String toString() {
+        return "GelfWriterMetrics{server=" + server + ", instance=" + instance + ", writtenMessages="
+                + getWrittenMessages() + ", writtenBytes=" + getWrittenBytes() + ", encodeLatency=" + encodeLatency
+                + ", sendLatency=" + sendLatency + "}";
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.joschi.tinylog.gelf;
+
+/**
+ * The JMX management interface of {@link GelfWriterMetrics}.
+ */
+public interface GelfWriterMetricsMBean {
+    /**
+     * @return the GELF-compatible server(s) as configured
+     */
+    String getServer();
+
+    /**
+     * @return the number of GELF messages which have been handed to the transport
+     */
+    long getWrittenMessages();
+
+    /**
+     * @return the size of the encoded GELF messages which have been handed to the transport in bytes, before
+     * compression
+     */
+    long getWrittenBytes();
+
+    /**
+     * @return the number of GELF messages which have been dropped by the overflow policy
+     */
+    long getDroppedMessages();
+
+    /**
+     * @return the number of log entries which have been suppressed by rate limiting
+     */
+    long getSuppressedMessages();
+
+    /**
+     * @return the number of GELF messages which have been truncated because of the size limits
+     */
+    long getTruncatedMessages();
+
+    /**
+     * @return the number of log entries and GELF messages which are queued but haven't been sent yet
+     */
+    long getQueueDepth();
+
+    /**
+     * @return the number of connections which have been re-established after the first connection to a server
+     */
+    long getReconnects();
+
+    /**
+     * @return the number of servers which are currently considered unavailable
+     */
+    int getUnavailableServers();
+
+    /**
+     * @return the mean time to encode a GELF message in nanoseconds
+     */
+    double getEncodeLatencyMeanNanos();
+
+    /**
+     * @return the 99th percentile of the time to encode a GELF message in nanoseconds
+     */
+    long getEncodeLatency99thPercentileNanos();
+
+    /**
+     * @return the maximum time to encode a GELF message in nanoseconds
+     */
+    long getEncodeLatencyMaxNanos();
+
+    /**
+     * @return the mean time to hand a GELF message to the transport in nanoseconds, including the time blocked by
+     * the overflow policy
+     */
+    double getSendLatencyMeanNanos();
+
+    /**
+     * @return the 99th percentile of the time to hand a GELF message to the transport in nanoseconds
+     */
+    long getSendLatency99thPercentileNanos();
+
+    /**
+     * @return the maximum time to hand a GELF message to the transport in nanoseconds
+     */
+    long getSendLatencyMaxNanos();
+}
@@ -0,0 +1,13 @@
+package com.github.joschi.tinylog.gelf;
+
+/**
+ * A transport sending GELF messages to a single server which tracks the health of that server.
+ * <p>
+ * {@link GelfLoadBalancingTransport} uses the health to avoid servers which are currently unavailable.
+ */
+interface HealthTrackingTransport {
+    /**
+     * @return the health of the GELF-compatible server
+     */
+    EndpointHealth getHealth();
+}
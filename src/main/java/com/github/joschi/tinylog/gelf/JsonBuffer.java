@@ -0,0 +1,346 @@
+package com.github.joschi.tinylog.gelf;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * A growable byte buffer for writing UTF-8 encoded JSON without intermediate {@link String} or {@code byte[]}
+ * allocations. Instances are not thread-safe and are meant to be reused.
+ */
+final class JsonBuffer {
+    private static final byte[] HEX_DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] bytes;
+    private int size;
+
+    JsonBuffer(final int initialCapacity) {
+        this.bytes = new byte[initialCapacity];
+    }
+
+    byte[] array() {
+        return bytes;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    void writeByte(final int b) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) b;
+    }
+
+    void writeBytes(final byte[] source) {
+        writeBytes(source, 0, source.length);
+    }
+
+    void writeBytes(final byte[] source, final int offset, final int length) {
+        ensureCapacity(length);
+        System.arraycopy(source, offset, bytes, size, length);
+        size += length;
+    }
+
+    void writeBytes(final DataInput source, final int length) throws IOException {
+        ensureCapacity(length);
+        source.readFully(bytes, size, length);
+        size += length;
+    }
+
+    void writeNull() {
+        writeBytes(NULL);
+    }
+
+    /**
+     * Encode the given field name including the leading comma, the quotes and the colon, i. e. {@code ,"name":}.
+     */
+    static byte[] fieldName(final String name) {
+        final JsonBuffer buffer = new JsonBuffer(name.length() + 8);
+        buffer.writeByte(',');
+        buffer.writeString(name);
+        buffer.writeByte(':');
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Write the given string as quoted and escaped JSON string.
+     */
+    void writeString(final CharSequence value) {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+
+        writeByte('"');
+        writeStringContent(value);
+        writeByte('"');
+    }
+
+    /**
+     * Write the given string as escaped JSON string content without the surrounding quotes.
+     */
+    void writeStringContent(final CharSequence value) {
+        writeChars(value, value.length());
+    }
+
+    private void writeChars(final CharSequence value, final int end) {
+        // A single char takes at most 3 bytes in UTF-8, escape sequences are handled separately
+        ensureCapacity(end * 3);
+
+        byte[] b = bytes;
+        int pos = size;
+        for (int i = 0; i < end; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    b[pos++] = (byte) c;
+                } else {
+                    size = pos;
+                    ensureCapacity(6 + (end - i - 1) * 3);
+                    b = bytes;
+                    pos = escape(b, pos, c);
+                }
+            } else if (c < 0x800) {
+                b[pos++] = (byte) (0xc0 | (c >> 6));
+                b[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(value.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                b[pos++] = (byte) (0xf0 | (codePoint >> 18));
+                b[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                b[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                b[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates cannot be represented in UTF-8
+                b[pos++] = '?';
+            } else {
+                b[pos++] = (byte) (0xe0 | (c >> 12));
+                b[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                b[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        size = pos;
+    }
+
+    /**
+     * Write the given string as escaped JSON string content without the surrounding quotes, but at most
+     * {@code maxBytes} bytes, see {@link #truncationIndex(CharSequence, int)}.
+     *
+     * @return {@code true} if the string has been truncated, {@code false} otherwise
+     */
+    boolean writeStringContent(final CharSequence value, final int maxBytes) {
+        final int end = truncationIndex(value, maxBytes);
+        writeChars(value, end);
+        return end < value.length();
+    }
+
+    /**
+     * Returns the number of chars of the given string which fit into {@code maxBytes} bytes of escaped JSON string
+     * content. Characters are only taken as a whole, so the content is never cut within a UTF-8 sequence, a surrogate
+     * pair or an escape sequence, and the rest of the string isn't looked at once the limit has been reached.
+     */
+    static int truncationIndex(final CharSequence value, final int maxBytes) {
+        final int length = value.length();
+        // A single char takes at most 6 bytes (as escape sequence), so short strings cannot exceed the limit
+        if ((long) length * 6L <= maxBytes) {
+            return length;
+        }
+
+        int byteCount = 0;
+        int end = 0;
+        while (end < length) {
+            final char c = value.charAt(end);
+            int chars = 1;
+            final int charBytes;
+            if (c < 0x80) {
+                charBytes = c >= 0x20 && c != '"' && c != '\\' ? 1 : escapedLength(c);
+            } else if (c < 0x800) {
+                charBytes = 2;
+            } else if (Character.isHighSurrogate(c) && end + 1 < length && Character.isLowSurrogate(value.charAt(end + 1))) {
+                chars = 2;
+                charBytes = 4;
+            } else {
+                charBytes = Character.isSurrogate(c) ? 1 : 3;
+            }
+
+            if (byteCount + charBytes > maxBytes) {
+                break;
+            }
+            byteCount += charBytes;
+            end += chars;
+        }
+        return end;
+    }
+
+    private static int escapedLength(final char c) {
+        switch (c) {
+            case '"':
+            case '\\':
+            case '\n':
+            case '\r':
+            case '\t':
+            case '\b':
+            case '\f':
+                return 2;
+            default:
+                return 6;
+        }
+    }
+
+    /**
+     * Truncate the escaped JSON string content starting at {@code offset} to at most {@code maxBytes} bytes. The
+     * content is cut before the first UTF-8 sequence or escape sequence which doesn't fit completely.
+     *
+     * @return {@code true} if the content has been truncated, {@code false} otherwise
+     */
+    boolean truncate(final int offset, final int maxBytes) {
+        if (size - offset <= maxBytes) {
+            return false;
+        }
+
+        final int limit = offset + maxBytes;
+        int pos = offset;
+        while (true) {
+            final int b = bytes[pos] & 0xff;
+            final int next;
+            if (b == '\\') {
+                next = pos + (bytes[pos + 1] == 'u' ? 6 : 2);
+            } else if (b < 0x80) {
+                next = pos + 1;
+            } else if (b < 0xe0) {
+                next = pos + 2;
+            } else if (b < 0xf0) {
+                next = pos + 3;
+            } else {
+                next = pos + 4;
+            }
+
+            if (next > limit) {
+                break;
+            }
+            pos = next;
+        }
+        size = pos;
+        return true;
+    }
+
+    private static int escape(final byte[] b, int pos, final char c) {
+        b[pos++] = '\\';
+        switch (c) {
+            case '"':
+                b[pos++] = '"';
+                break;
+            case '\\':
+                b[pos++] = '\\';
+                break;
+            case '\n':
+                b[pos++] = 'n';
+                break;
+            case '\r':
+                b[pos++] = 'r';
+                break;
+            case '\t':
+                b[pos++] = 't';
+                break;
+            case '\b':
+                b[pos++] = 'b';
+                break;
+            case '\f':
+                b[pos++] = 'f';
+                break;
+            default:
+                b[pos++] = 'u';
+                b[pos++] = '0';
+                b[pos++] = '0';
+                b[pos++] = HEX_DIGITS[(c >> 4) & 0xf];
+                b[pos++] = HEX_DIGITS[c & 0xf];
+        }
+        return pos;
+    }
+
+    /**
+     * Write the given number as JSON number.
+     */
+    void writeLong(final long value) {
+        if (value == Long.MIN_VALUE) {
+            writeBytes(MIN_LONG);
+            return;
+        }
+
+        long remaining = value;
+        if (remaining < 0) {
+            writeByte('-');
+            remaining = -remaining;
+        }
+
+        ensureCapacity(19);
+        final int digits = digits(remaining);
+        int pos = size + digits;
+        size = pos;
+        do {
+            bytes[--pos] = (byte) ('0' + (remaining % 10));
+            remaining /= 10;
+        } while (remaining != 0);
+    }
+
+    /**
+     * Write the given UNIX timestamp in milliseconds as decimal number of seconds, e. g. {@code 1420070400.123}.
+     */
+    void writeTimestamp(final long millis) {
+        long remaining = millis;
+        if (remaining < 0) {
+            writeByte('-');
+            remaining = -remaining;
+        }
+
+        writeLong(remaining / 1000L);
+
+        final int fraction = (int) (remaining % 1000L);
+        ensureCapacity(4);
+        bytes[size++] = '.';
+        bytes[size++] = (byte) ('0' + fraction / 100);
+        bytes[size++] = (byte) ('0' + (fraction / 10) % 10);
+        bytes[size++] = (byte) ('0' + fraction % 10);
+    }
+
+    private static int digits(final long value) {
+        long limit = 10L;
+        for (int digits = 1; digits < 19; digits++) {
+            if (value < limit) {
+                return digits;
+            }
+            limit *= 10L;
+        }
+        return 19;
+    }
+
+    /**
+     * Append the output of the given {@link Deflater} until it has finished compressing its input.
+     */
+    void writeDeflated(final Deflater deflater) {
+        while (!deflater.finished()) {
+            ensureCapacity(Math.max(64, bytes.length - size));
+            size += deflater.deflate(bytes, size, bytes.length - size);
+        }
+    }
+
+    private void ensureCapacity(final int additional) {
+        final int required = size + additional;
+        if (required > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length << 1));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.joschi.tinylog.gelf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of latencies in nanoseconds with logarithmic buckets, similar to an HdrHistogram.
+ * <p>
+ * Every power of two is split into {@value #SUB_BUCKETS} linear sub-buckets, so values are recorded with a relative
+ * error of at most about 3% over the whole range of {@code long}. Recording a value is a single increment of an
+ * {@link AtomicLongArray} element without locking or allocation.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a single latency.
+     *
+     * @param nanos the latency in nanoseconds, negative values are recorded as {@code 0}
+     */
+    void record(final long nanos) {
+        final long value = Math.max(0L, nanos);
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    static int index(final long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        // The position of the highest bit selects the bucket, the following bits select the sub-bucket
+        final int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - 1 - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return the highest value which is recorded in the bucket with the given index
+     */
+    static long highestValue(final int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+
+        final int shift = index / SUB_BUCKETS - 1;
+        final long subBucket = SUB_BUCKETS + index % SUB_BUCKETS;
+        return ((subBucket + 1L) << shift) - 1L;
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return the number of recorded latencies
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the highest recorded latency.
+     *
+     * @return the highest latency in nanoseconds, {@code 0} if nothing has been recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the arithmetic mean of the recorded latencies.
+     *
+     * @return the mean latency in nanoseconds, {@code 0} if nothing has been recorded
+     */
+    public double getMean() {
+        final long n = count.get();
+        return n == 0L ? 0d : (double) sum.get() / n;
+    }
+
+    /**
+     * Returns the latency below which the given percentage of the recorded latencies fall.
+     * <p>
+     * Values which are recorded concurrently may or may not be taken into account.
+     *
+     * @param percentile the percentile, between {@code 0} and {@code 100}
+     * @return the latency in nanoseconds, {@code 0} if nothing has been recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (percentile < 0d || percentile > 100d) {
+            throw new IllegalArgumentException("Invalid percentile " + percentile);
+        }
+
+        final long[] snapshot = new long[BUCKETS];
+        long total = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0L) {
+            return 0L;
+        }
+
+        final long target = Math.max(1L, (long) Math.ceil(percentile / 100d * total));
+        long cumulative = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += snapshot[i];
+            if (cumulative >= target) {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ", mean=" + (long) getMean() + "ns, p50=" + getValueAtPercentile(50d)
+                + "ns, p99=" + getValueAtPercentile(99d) + "ns, max=" + getMax() + "ns";
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.pmw.tinylog.InternalLogger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The hostname of the local machine, determined without ever blocking the construction of a {@link GelfWriter} or a
+ * logging thread.
+ * <p>
+ * The hostname is taken from the first of these sources which provides one:
+ * <ol>
+ * <li>the configured hostname</li>
+ * <li>the environment variables {@code HOSTNAME} and {@code COMPUTERNAME}</li>
+ * <li>the file {@code /proc/sys/kernel/hostname}</li>
+ * <li>a reverse DNS lookup of the local address on a background thread</li>
+ * </ol>
+ * The DNS lookup starts right away. Until it has completed, {@link #get()} returns {@value #FALLBACK}, afterwards it
+ * returns the looked up hostname. If the lookup fails, {@value #FALLBACK} is used for good.
+ */
+final class LocalHostname {
+    static final String FALLBACK = "localhost";
+
+    private static final String[] ENVIRONMENT_VARIABLES = {"HOSTNAME", "COMPUTERNAME"};
+    private static final File KERNEL_HOSTNAME = new File("/proc/sys/kernel/hostname");
+
+    private final FutureTask<String> lookup;
+    private volatile String hostname;
+
+    private LocalHostname(final String hostname) {
+        this.lookup = null;
+        this.hostname = hostname;
+    }
+
+    LocalHostname(final Callable<String> lookup) {
+        this.lookup = new FutureTask<>(lookup);
+
+        final Thread thread = new Thread(this.lookup, "tinylog-gelf-hostname");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Determine the hostname of the local machine.
+     *
+     * @param configured the configured hostname, may be {@code null} or empty
+     * @return the hostname of the local machine
+     */
+    static LocalHostname of(final String configured) {
+        if (configured != null && !configured.isEmpty()) {
+            return new LocalHostname(configured);
+        }
+
+        String hostname = fromEnvironment(System.getenv());
+        if (hostname == null) {
+            hostname = fromFile(KERNEL_HOSTNAME);
+        }
+        if (hostname != null) {
+            return new LocalHostname(hostname);
+        }
+
+        return new LocalHostname(new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                return InetAddress.getLocalHost().getHostName();
+            }
+        });
+    }
+
+    static String fromEnvironment(final Map<String, String> environment) {
+        for (String variable : ENVIRONMENT_VARIABLES) {
+            final String hostname = trimToNull(environment.get(variable));
+            if (hostname != null) {
+                return hostname;
+            }
+        }
+        return null;
+    }
+
+    static String fromFile(final File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            return trimToNull(reader.readLine());
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String trimToNull(final String value) {
+        if (value == null) {
+            return null;
+        }
+
+        final String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    /**
+     * Returns the hostname of the local machine. Never blocks: while the hostname is still being looked up in DNS,
+     * {@value #FALLBACK} is returned.
+     *
+     * @return the hostname of the local machine, {@value #FALLBACK} if it couldn't be determined (yet)
+     */
+    String get() {
+        final String current = hostname;
+        if (current != null) {
+            return current;
+        }
+        return lookup.isDone() ? complete() : FALLBACK;
+    }
+
+    private synchronized String complete() {
+        if (hostname != null) {
+            return hostname;
+        }
+
+        String resolved = FALLBACK;
+        try {
+            resolved = lookup.get();
+        } catch (ExecutionException e) {
+            InternalLogger.warn(e.getCause(), "Couldn't resolve the local hostname, using " + FALLBACK);
+        } catch (InterruptedException e) {
+            // The lookup has already completed, so this doesn't happen, but try again with the next message
+            Thread.currentThread().interrupt();
+            return FALLBACK;
+        }
+        hostname = resolved;
+        return resolved;
+    }
+}
@@ -0,0 +1,125 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.pmw.tinylog.Level;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The behaviour of {@link GelfWriter} if a GELF message cannot be sent because the queue of the transport (or the
+ * ring buffer in asynchronous mode) is full.
+ * <p>
+ * Supported policies are:
+ * <ul>
+ * <li>{@code BLOCK}: wait until the message has been accepted (default)</li>
+ * <li>{@code DROP_NEWEST}: drop the message which should be sent</li>
+ * <li>{@code DROP_OLDEST}: drop the oldest queued message to make room for the new one; only supported in
+ * asynchronous mode, otherwise behaves like {@code DROP_NEWEST}</li>
+ * <li>{@code DROP_BELOW_LEVEL(level)}: drop messages below the given level, wait for all others</li>
+ * <li>{@code BLOCK_WITH_TIMEOUT(ms)}: wait up to the given number of milliseconds, then drop the message</li>
+ * </ul>
+ */
+final class OverflowPolicy {
+    enum Type {
+        BLOCK, DROP_NEWEST, DROP_OLDEST, DROP_BELOW_LEVEL, BLOCK_WITH_TIMEOUT
+    }
+
+    private final Type type;
+    private final Level level;
+    private final long timeoutNanos;
+    private final AtomicLong droppedMessages = new AtomicLong();
+
+    private OverflowPolicy(final Type type, final Level level, final long timeoutMillis) {
+        this.type = type;
+        this.level = level;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    static OverflowPolicy block() {
+        return new OverflowPolicy(Type.BLOCK, Level.TRACE, 0L);
+    }
+
+    /**
+     * Parse an overflow policy like {@code DROP_NEWEST} or {@code BLOCK_WITH_TIMEOUT(100)}.
+     *
+     * @param policy the textual representation of the overflow policy, {@code null} selects {@code BLOCK}
+     * @return the overflow policy
+     * @throws IllegalArgumentException if the policy is invalid
+     */
+    static OverflowPolicy parse(final String policy) {
+        if (null == policy || policy.trim().isEmpty()) {
+            return block();
+        }
+
+        final String trimmed = policy.trim().toUpperCase(Locale.ENGLISH);
+        final int parameterStart = trimmed.indexOf('(');
+        final String name = parameterStart == -1 ? trimmed : trimmed.substring(0, parameterStart).trim();
+        final String parameter;
+        if (parameterStart == -1) {
+            parameter = null;
+        } else if (trimmed.endsWith(")")) {
+            parameter = trimmed.substring(parameterStart + 1, trimmed.length() - 1).trim();
+        } else {
+            throw new IllegalArgumentException("Invalid overflow policy " + policy);
+        }
+
+        final Type type = Type.valueOf(name);
+        switch (type) {
+            case DROP_BELOW_LEVEL:
+                if (null == parameter) {
+                    throw new IllegalArgumentException("Missing level for overflow policy " + policy);
+                }
+                return new OverflowPolicy(type, Level.valueOf(parameter), 0L);
+            case BLOCK_WITH_TIMEOUT:
+                if (null == parameter) {
+                    throw new IllegalArgumentException("Missing timeout for overflow policy " + policy);
+                }
+                return new OverflowPolicy(type, Level.TRACE, Long.parseLong(parameter));
+            default:
+                if (null != parameter) {
+                    throw new IllegalArgumentException("Unexpected parameter for overflow policy " + policy);
+                }
+                return new OverflowPolicy(type, Level.TRACE, 0L);
+        }
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    /**
+     * @param messageLevel the level of the message which cannot be sent
+     * @return {@code true} if the caller should wait indefinitely for the message to be accepted
+     */
+    boolean blocks(final Level messageLevel) {
+        return type == Type.BLOCK || (type == Type.DROP_BELOW_LEVEL && messageLevel.compareTo(level) >= 0);
+    }
+
+    /**
+     * @return the maximum time to wait for a message to be accepted in nanoseconds
+     */
+    long getTimeoutNanos() {
+        return timeoutNanos;
+    }
+
+    void dropped() {
+        droppedMessages.incrementAndGet();
+    }
+
+    long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case DROP_BELOW_LEVEL:
+                return type + "(" + level + ")";
+            case BLOCK_WITH_TIMEOUT:
+                return type + "(" + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + ")";
+            default:
+                return type.toString();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.joschi.tinylog.gelf;
+
+import java.util.Arrays;
+
+/**
+ * Matches class names against a set of prefixes like {@code sun.reflect.} or {@code java.lang.reflect.}.
+ * <p>
+ * The prefixes are stored in a trie, so checking a class name takes at most one step per character of the class
+ * name, regardless of the number of prefixes.
+ */
+final class PackagePrefixFilter {
+    private static final PackagePrefixFilter NONE = new PackagePrefixFilter();
+
+    private final Node root = new Node();
+    private final String[] prefixes;
+
+    private PackagePrefixFilter(final String... prefixes) {
+        this.prefixes = prefixes.clone();
+        for (String prefix : prefixes) {
+            Node node = root;
+            for (int i = 0; i < prefix.length() && !node.terminal; i++) {
+                node = node.child(prefix.charAt(i), true);
+            }
+            node.terminal = true;
+        }
+    }
+
+    static PackagePrefixFilter none() {
+        return NONE;
+    }
+
+    /**
+     * Create a filter for the given prefixes. Blank prefixes are ignored.
+     *
+     * @param prefixes the prefixes of the class names to match, may be {@code null}
+     * @return the filter
+     */
+    static PackagePrefixFilter of(final String... prefixes) {
+        if (null == prefixes) {
+            return NONE;
+        }
+
+        final String[] trimmed = new String[prefixes.length];
+        int count = 0;
+        for (String prefix : prefixes) {
+            if (null != prefix && !prefix.trim().isEmpty()) {
+                trimmed[count++] = prefix.trim();
+            }
+        }
+        return count == 0 ? NONE : new PackagePrefixFilter(Arrays.copyOf(trimmed, count));
+    }
+
+    /**
+     * @return {@code true} if the filter doesn't match any class name
+     */
+    boolean isEmpty() {
+        return prefixes.length == 0;
+    }
+
+    /**
+     * @param className the fully qualified class name
+     * @return {@code true} if the class name starts with one of the prefixes, {@code false} otherwise
+     */
+    boolean matches(final String className) {
+        Node node = root;
+        for (int i = 0; i < className.length(); i++) {
+            if (node.terminal) {
+                return true;
+            }
+            node = node.child(className.charAt(i), false);
+            if (node == null) {
+                return false;
+            }
+        }
+        return node.terminal;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(prefixes);
+    }
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean terminal;
+
+        private Node child(final char key, final boolean create) {
+            // Nodes rarely have more than a few children, so a linear search is fastest
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return children[i];
+                }
+            }
+            if (!create) {
+                return null;
+            }
+
+            final Node child = new Node();
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            keys[keys.length - 1] = key;
+            children[children.length - 1] = child;
+            return child;
+        }
+    }
+}
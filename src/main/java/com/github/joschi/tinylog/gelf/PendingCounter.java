@@ -0,0 +1,51 @@
+package com.github.joschi.tinylog.gelf;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts submitted and completed messages of a queue, so that callers can wait until all messages which have been
+ * submitted up to a certain point in time have been processed.
+ * <p>
+ * Messages which are removed from the queue without being sent (e. g. by an {@link OverflowPolicy}) have to be
+ * counted as completed as well, otherwise {@link #await(long)} would wait for them until the timeout elapses.
+ */
+final class PendingCounter {
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+
+    void submitted() {
+        submitted.incrementAndGet();
+    }
+
+    void completed(final int count) {
+        completed.addAndGet(count);
+    }
+
+    /**
+     * @return the number of submitted messages which haven't been completed yet
+     */
+    long pending() {
+        return Math.max(0L, submitted.get() - completed.get());
+    }
+
+    /**
+     * Wait until all messages submitted before calling this method have been completed.
+     *
+     * @param timeoutMillis the maximum time to wait in milliseconds
+     * @return the number of messages which are still outstanding
+     * @throws InterruptedException if interrupted while waiting
+     */
+    long await(final long timeoutMillis) throws InterruptedException {
+        final long target = submitted.get();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int tries = 0;
+        while (completed.get() < target && System.nanoTime() - deadline < 0L) {
+            tries = AsyncDispatcher.backOff(tries);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return Math.max(0L, target - completed.get());
+    }
+}
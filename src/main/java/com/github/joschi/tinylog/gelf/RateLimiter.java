@@ -0,0 +1,219 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.pmw.tinylog.Level;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of log entries per {@link Level} and second, using one token bucket per level.
+ * <p>
+ * The rate limit is given as a comma-separated list of {@code LEVEL(messagesPerSecond[, burst])} entries, e. g.
+ * {@code DEBUG(100, 1000), INFO(1000)}. The burst size defaults to the number of messages per second. Levels which
+ * aren't listed are not limited, {@link Level#ERROR} cannot be limited at all.
+ * <p>
+ * Every token bucket is a single {@link AtomicLong} holding the theoretical arrival time of the next log entry
+ * (generic cell rate algorithm). Taking a token is a single compare-and-set without locking.
+ */
+final class RateLimiter {
+    static final long DEFAULT_SUMMARY_INTERVAL_MILLIS = 10000L;
+
+    private static final Level[] LEVELS = Level.values();
+
+    private final Bucket[] buckets = new Bucket[LEVELS.length];
+    private final AtomicLong[] suppressed = new AtomicLong[LEVELS.length];
+    private final AtomicLong totalSuppressed = new AtomicLong();
+    private final long summaryIntervalNanos;
+    private final AtomicLong nextSummary;
+    private final boolean limited;
+
+    private RateLimiter(final Bucket[] buckets, final long summaryIntervalMillis) {
+        System.arraycopy(buckets, 0, this.buckets, 0, buckets.length);
+        for (int i = 0; i < suppressed.length; i++) {
+            suppressed[i] = new AtomicLong();
+        }
+        this.summaryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(summaryIntervalMillis);
+        this.nextSummary = new AtomicLong(System.nanoTime() + summaryIntervalNanos);
+
+        boolean anyLimit = false;
+        for (Bucket bucket : buckets) {
+            anyLimit |= bucket != null;
+        }
+        this.limited = anyLimit;
+    }
+
+    static RateLimiter unlimited() {
+        return new RateLimiter(new Bucket[LEVELS.length], DEFAULT_SUMMARY_INTERVAL_MILLIS);
+    }
+
+    static RateLimiter parse(final String rateLimit) {
+        return parse(rateLimit, DEFAULT_SUMMARY_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Parse a rate limit like {@code DEBUG(100, 1000), INFO(1000)}.
+     *
+     * @param rateLimit             the textual representation of the rate limit, {@code null} disables rate limiting
+     * @param summaryIntervalMillis the minimum time between two suppression summaries in milliseconds
+     * @return the rate limiter
+     * @throws IllegalArgumentException if the rate limit is invalid
+     */
+    static RateLimiter parse(final String rateLimit, final long summaryIntervalMillis) {
+        final Bucket[] buckets = new Bucket[LEVELS.length];
+        if (null == rateLimit || rateLimit.trim().isEmpty()) {
+            return new RateLimiter(buckets, summaryIntervalMillis);
+        }
+
+        int start = 0;
+        while (start < rateLimit.length()) {
+            final int parameterStart = rateLimit.indexOf('(', start);
+            final int parameterEnd = rateLimit.indexOf(')', start);
+            if (parameterStart == -1 || parameterEnd < parameterStart) {
+                throw new IllegalArgumentException("Invalid rate limit " + rateLimit);
+            }
+
+            final Level level = Level.valueOf(rateLimit.substring(start, parameterStart).trim()
+                    .toUpperCase(Locale.ENGLISH));
+            if (level.compareTo(Level.ERROR) >= 0) {
+                throw new IllegalArgumentException("Log entries with level " + level + " cannot be rate limited");
+            }
+
+            final String[] parameters = rateLimit.substring(parameterStart + 1, parameterEnd).split(",");
+            if (parameters.length > 2) {
+                throw new IllegalArgumentException("Invalid rate limit " + rateLimit);
+            }
+            final long rate = Long.parseLong(parameters[0].trim());
+            final long burst = parameters.length == 2 ? Long.parseLong(parameters[1].trim()) : rate;
+            buckets[level.ordinal()] = new Bucket(rate, burst);
+
+            // Skip the separator between two levels
+            start = parameterEnd + 1;
+            while (start < rateLimit.length() && (rateLimit.charAt(start) == ','
+                    || Character.isWhitespace(rateLimit.charAt(start)))) {
+                start++;
+            }
+        }
+
+        return new RateLimiter(buckets, summaryIntervalMillis);
+    }
+
+    /**
+     * Take a token for a log entry with the given level.
+     *
+     * @param level the level of the log entry
+     * @return {@code true} if the log entry should be written, {@code false} if it has been suppressed
+     */
+    boolean tryAcquire(final Level level) {
+        final Bucket bucket = buckets[level.ordinal()];
+        if (bucket == null || bucket.tryAcquire()) {
+            return true;
+        }
+
+        suppressed[level.ordinal()].incrementAndGet();
+        totalSuppressed.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Returns a summary of the log entries which have been suppressed since the last summary, if the summary interval
+     * has elapsed. Only one caller per summary interval gets the summary.
+     *
+     * @param force {@code true} to ignore the summary interval, e. g. when closing the writer
+     * @return the summary or {@code null} if there is nothing to report
+     */
+    String pollSummary(final boolean force) {
+        if (!limited) {
+            return null;
+        }
+
+        final long now = System.nanoTime();
+        final long next = nextSummary.get();
+        if (!force && now - next < 0L) {
+            return null;
+        }
+        if (!nextSummary.compareAndSet(next, now + summaryIntervalNanos)) {
+            return null;
+        }
+
+        long total = 0L;
+        final StringBuilder levels = new StringBuilder();
+        for (int i = 0; i < suppressed.length; i++) {
+            final long count = suppressed[i].getAndSet(0L);
+            if (count > 0L) {
+                if (levels.length() > 0) {
+                    levels.append(", ");
+                }
+                levels.append(LEVELS[i]).append(": ").append(count);
+                total += count;
+            }
+        }
+
+        if (total == 0L) {
+            return null;
+        }
+        return "Rate limiting suppressed " + total + " log entries (" + levels + ")";
+    }
+
+    /**
+     * @return the total number of suppressed log entries
+     */
+    long getSuppressedMessages() {
+        return totalSuppressed.get();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] != null) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(LEVELS[i]).append(buckets[i]);
+            }
+        }
+        return sb.length() == 0 ? "unlimited" : sb.toString();
+    }
+
+    private static final class Bucket {
+        private final long rate;
+        private final long burst;
+        private final long intervalNanos;
+        private final long toleranceNanos;
+        private final AtomicLong theoreticalArrivalTime;
+
+        private Bucket(final long rate, final long burst) {
+            if (rate < 1L || burst < 1L) {
+                throw new IllegalArgumentException("Invalid rate limit of " + rate + " messages per second and "
+                        + "burst size " + burst);
+            }
+
+            this.rate = rate;
+            this.burst = burst;
+            this.intervalNanos = Math.max(1L, TimeUnit.SECONDS.toNanos(1L) / rate);
+            this.toleranceNanos = intervalNanos * burst;
+            this.theoreticalArrivalTime = new AtomicLong(System.nanoTime());
+        }
+
+        private boolean tryAcquire() {
+            final long now = System.nanoTime();
+            while (true) {
+                final long arrivalTime = theoreticalArrivalTime.get();
+                // Tokens don't accumulate beyond the burst size while the bucket isn't used
+                final long next = (arrivalTime - now < 0L ? now : arrivalTime) + intervalNanos;
+                if (next - now > toleranceNanos) {
+                    return false;
+                }
+                if (theoreticalArrivalTime.compareAndSet(arrivalTime, next)) {
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "(" + rate + ", " + burst + ")";
+        }
+    }
+}
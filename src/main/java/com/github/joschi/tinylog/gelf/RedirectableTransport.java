@@ -0,0 +1,18 @@
+package com.github.joschi.tinylog.gelf;
+
+import java.net.InetSocketAddress;
+
+/**
+ * A transport sending GELF messages to a single server whose address may change while the transport is running.
+ * <p>
+ * {@link DnsRefresher} redirects the transport if the hostname of the server resolves to a new address.
+ */
+interface RedirectableTransport {
+    /**
+     * Send further GELF messages to the given address. Connection-oriented transports keep an established connection
+     * and use the new address the next time they connect.
+     *
+     * @param remoteAddress the new address of the GELF-compatible server
+     */
+    void redirect(InetSocketAddress remoteAddress);
+}
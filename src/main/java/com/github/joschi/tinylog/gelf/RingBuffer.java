@@ -0,0 +1,116 @@
+package com.github.joschi.tinylog.gelf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free multi-producer multi-consumer queue backed by a preallocated ring of slots.
+ * <p>
+ * Every slot carries a sequence number which tells producers and consumers whether the slot is free or contains an
+ * element for the current lap (see Dmitry Vyukov's bounded MPMC queue). Neither {@link #offer(Object)} nor
+ * {@link #poll()} allocate any objects.
+ *
+ * @param <E> the type of elements held in this queue
+ */
+final class RingBuffer<E> {
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Construct a new RingBuffer instance.
+     *
+     * @param requestedCapacity the minimum capacity of the ring buffer, will be rounded up to the next power of two
+     *                          (but at least 2, as the sequence numbers of a single slot would be ambiguous)
+     */
+    RingBuffer(final int requestedCapacity) {
+        if (requestedCapacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity " + requestedCapacity);
+        }
+
+        this.capacity = roundUp(Math.max(2, requestedCapacity));
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        this.elements = new AtomicReferenceArray<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    private static int roundUp(final int value) {
+        final int highestOneBit = Integer.highestOneBit(value);
+        return highestOneBit == value ? value : highestOneBit << 1;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Insert an element if a slot is available.
+     *
+     * @param element the element to add
+     * @return {@code true} if the element has been added, {@code false} if the ring buffer is full
+     */
+    boolean offer(final E element) {
+        long position = tail.get();
+        while (true) {
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Remove the oldest element.
+     *
+     * @return the oldest element or {@code null} if the ring buffer is empty
+     */
+    E poll() {
+        long position = head.get();
+        while (true) {
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    final E element = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.lazySet(index, position + capacity);
+                    return element;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * @return the approximate number of elements in the ring buffer
+     */
+    int size() {
+        final long size = tail.get() - head.get();
+        return (int) Math.max(0L, Math.min(size, capacity));
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.joschi.tinylog.gelf;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the encoded {@code _sourceClassName}, {@code _sourceMethodName}, {@code _sourceFileName} and
+ * {@code _sourceLineNumber} fields per call site, as a given call site always produces the same four values.
+ * <p>
+ * The cache is bounded like the frame cache of the {@link StackTraceRenderer}: once it is full, it is cleared and
+ * the call sites which are still in use are added again.
+ */
+final class SourceLocationCache {
+    private static final byte[] SOURCE_CLASS_NAME = JsonBuffer.fieldName("_sourceClassName");
+    private static final byte[] SOURCE_METHOD_NAME = JsonBuffer.fieldName("_sourceMethodName");
+    private static final byte[] SOURCE_FILE_NAME = JsonBuffer.fieldName("_sourceFileName");
+    private static final byte[] SOURCE_LINE_NUMBER = JsonBuffer.fieldName("_sourceLineNumber");
+    private static final int INITIAL_FRAGMENT_SIZE = 256;
+
+    private final ConcurrentHashMap<CallSite, SourceLocation> locations;
+    private final int maxCachedLocations;
+    private final int maxFieldLength;
+
+    /**
+     * Construct a new SourceLocationCache instance.
+     *
+     * @param maxCachedLocations the maximum number of call sites to cache
+     * @param maxFieldLength     the maximum size of a string field in bytes
+     */
+    SourceLocationCache(final int maxCachedLocations, final int maxFieldLength) {
+        if (maxCachedLocations < 1) {
+            throw new IllegalArgumentException("Invalid maximum number of cached source locations "
+                    + maxCachedLocations);
+        }
+
+        this.locations = new ConcurrentHashMap<>(Math.min(maxCachedLocations, 1024));
+        this.maxCachedLocations = maxCachedLocations;
+        this.maxFieldLength = maxFieldLength;
+    }
+
+    /**
+     * Write the fields of the given source location including their leading commas. Missing values are omitted.
+     *
+     * @return {@code true} if one of the names has been truncated, {@code false} otherwise
+     */
+    boolean write(final String className,
+                  final String methodName,
+                  final String fileName,
+                  final int lineNumber,
+                  final JsonBuffer buffer) {
+        if (null == className && null == methodName && null == fileName && lineNumber == -1) {
+            return false;
+        }
+
+        final SourceLocation location = get(new CallSite(className, methodName, fileName, lineNumber));
+        buffer.writeBytes(location.fragment);
+        return location.truncated;
+    }
+
+    private SourceLocation get(final CallSite callSite) {
+        SourceLocation location = locations.get(callSite);
+        if (location == null) {
+            location = new SourceLocation(callSite, maxFieldLength);
+            if (locations.size() >= maxCachedLocations) {
+                // Keep the cache bounded; call sites which are still in use will be re-added quickly
+                locations.clear();
+            }
+            locations.putIfAbsent(callSite, location);
+        }
+        return location;
+    }
+
+    int cachedLocations() {
+        return locations.size();
+    }
+
+    private static final class SourceLocation {
+        private final byte[] fragment;
+        private final boolean truncated;
+
+        private SourceLocation(final CallSite callSite, final int maxFieldLength) {
+            final JsonBuffer buffer = new JsonBuffer(INITIAL_FRAGMENT_SIZE);
+            boolean fieldTruncated = false;
+            if (null != callSite.className) {
+                buffer.writeBytes(SOURCE_CLASS_NAME);
+                fieldTruncated |= GelfEncoder.writeString(callSite.className, maxFieldLength, buffer);
+            }
+            if (null != callSite.methodName) {
+                buffer.writeBytes(SOURCE_METHOD_NAME);
+                fieldTruncated |= GelfEncoder.writeString(callSite.methodName, maxFieldLength, buffer);
+            }
+            if (null != callSite.fileName) {
+                buffer.writeBytes(SOURCE_FILE_NAME);
+                fieldTruncated |= GelfEncoder.writeString(callSite.fileName, maxFieldLength, buffer);
+            }
+            if (callSite.lineNumber != -1) {
+                buffer.writeBytes(SOURCE_LINE_NUMBER);
+                buffer.writeLong(callSite.lineNumber);
+            }
+            this.fragment = buffer.toByteArray();
+            this.truncated = fieldTruncated;
+        }
+    }
+
+    private static final class CallSite {
+        private final String className;
+        private final String methodName;
+        private final String fileName;
+        private final int lineNumber;
+        private final int hash;
+
+        private CallSite(final String className, final String methodName, final String fileName, final int lineNumber) {
+            this.className = className;
+            this.methodName = methodName;
+            this.fileName = fileName;
+            this.lineNumber = lineNumber;
+
+            int h = lineNumber;
+            h = 31 * h + hashCode(className);
+            h = 31 * h + hashCode(methodName);
+            h = 31 * h + hashCode(fileName);
+            this.hash = h;
+        }
+
+        private static int hashCode(final Object o) {
+            return o == null ? 0 : o.hashCode();
+        }
+
+        private static boolean equal(final Object a, final Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CallSite)) {
+                return false;
+            }
+
+            final CallSite that = (CallSite) o;
+            return hash == that.hash
+                    && lineNumber == that.lineNumber
+                    && equal(className, that.className)
+                    && equal(methodName, that.methodName)
+                    && equal(fileName, that.fileName);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package com.github.joschi.tinylog.gelf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Renders stack traces including causes and suppressed exceptions.
+ * <p>
+ * Every stack frame is rendered as {@code className.methodName(fileName:lineNumber)}. The rendered representation
+ * of a {@link StackTraceElement} is cached, so that frames which are seen over and over again (which is the common
+ * case for exceptions thrown from the same place) only cost a lookup and a copy.
+ * <p>
+ * Additionally, whole stack traces can be cached. They are keyed on everything which ends up in the rendered stack
+ * trace, i. e. the stack frames of the throwable and the classes, messages and stack frames of all of its causes and
+ * suppressed exceptions. The class and message of the throwable itself aren't part of the rendered stack trace, so
+ * e. g. exceptions whose messages contain an ID share a cache entry as long as they are thrown from the same place.
+ * An exception which is thrown over and over again from the same place then costs walking its stack
+ * frames once for computing the key, but no rendering or escaping at all.
+ * <p>
+ * In order to keep GELF messages small, the number of rendered frames per throwable and the number of rendered causes
+ * can be limited, and frames of classes matching a {@link PackagePrefixFilter} (e. g. reflection or framework
+ * internals) can be left out. Consecutive frames which haven't been rendered are summarised as
+ * {@code ... N frames omitted}.
+ */
+final class StackTraceRenderer {
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final String CAUSE_CAPTION = "Caused by: ";
+    private static final String SUPPRESSED_CAPTION = "Suppressed: ";
+    private static final int INITIAL_BUILDER_SIZE = 1024;
+
+    private final int maxCachedFrames;
+    private final ConcurrentMap<StackTraceElement, Frame> frames;
+    private final int maxCachedTraces;
+    private final ConcurrentMap<TraceKey, RenderedTrace> traces;
+    private final int maxStackDepth;
+    private final int maxCauseDepth;
+    private final PackagePrefixFilter frameFilter;
+    private final ThreadLocal<StringBuilder> builders = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(INITIAL_BUILDER_SIZE);
+        }
+    };
+
+    /**
+     * Construct a new StackTraceRenderer instance.
+     *
+     * @param maxCachedFrames the maximum number of rendered stack frames to cache
+     */
+    StackTraceRenderer(final int maxCachedFrames) {
+        this(maxCachedFrames, 0);
+    }
+
+    /**
+     * Construct a new StackTraceRenderer instance.
+     *
+     * @param maxCachedFrames the maximum number of rendered stack frames to cache
+     * @param maxCachedTraces the maximum number of rendered stack traces to cache, {@code 0} disables the cache
+     */
+    StackTraceRenderer(final int maxCachedFrames, final int maxCachedTraces) {
+        this(maxCachedFrames, maxCachedTraces, 0, 0, PackagePrefixFilter.none());
+    }
+
+    /**
+     * Construct a new StackTraceRenderer instance.
+     *
+     * @param maxCachedFrames the maximum number of rendered stack frames to cache
+     * @param maxCachedTraces the maximum number of rendered stack traces to cache, {@code 0} disables the cache
+     * @param maxStackDepth   the maximum number of rendered frames per throwable, {@code 0} renders all frames
+     * @param maxCauseDepth   the maximum number of rendered nested causes, {@code 0} renders all causes
+     * @param frameFilter     the filter for frames which shouldn't be rendered
+     */
+    StackTraceRenderer(final int maxCachedFrames,
+                       final int maxCachedTraces,
+                       final int maxStackDepth,
+                       final int maxCauseDepth,
+                       final PackagePrefixFilter frameFilter) {
+        if (maxStackDepth < 0 || maxCauseDepth < 0) {
+            throw new IllegalArgumentException("Invalid maximum stack depth " + maxStackDepth
+                    + " or maximum cause depth " + maxCauseDepth);
+        }
+
+        this.maxCachedFrames = maxCachedFrames;
+        this.frames = new ConcurrentHashMap<>(Math.min(maxCachedFrames, 1024));
+        this.maxCachedTraces = maxCachedTraces;
+        this.traces = new ConcurrentHashMap<>(Math.min(maxCachedTraces, 1024));
+        this.maxStackDepth = maxStackDepth;
+        this.maxCauseDepth = maxCauseDepth;
+        this.frameFilter = frameFilter;
+    }
+
+    /**
+     * Render the stack trace of the given {@link Throwable}.
+     *
+     * @param throwable the throwable to render
+     * @return the rendered stack trace
+     */
+    String render(final Throwable throwable) {
+        final RenderedTrace trace = cachedTrace(throwable);
+        if (trace != null && trace.text != null) {
+            return trace.text;
+        }
+
+        final StringBuilder sb = builders.get();
+        sb.setLength(0);
+        render(throwable, new StringOutput(sb));
+        final String text = sb.toString();
+        if (trace != null) {
+            trace.text = text;
+        }
+        return text;
+    }
+
+    /**
+     * Render the stack trace of the given {@link Throwable} as escaped JSON string content (without quotes).
+     *
+     * @param throwable the throwable to render
+     * @param buffer    the buffer to append the stack trace to
+     */
+    void render(final Throwable throwable, final JsonBuffer buffer) {
+        final RenderedTrace trace = cachedTrace(throwable);
+        if (trace != null && trace.json != null) {
+            buffer.writeBytes(trace.json);
+            return;
+        }
+
+        final int offset = buffer.size();
+        render(throwable, new JsonOutput(buffer));
+        if (trace != null) {
+            trace.json = Arrays.copyOfRange(buffer.array(), offset, buffer.size());
+        }
+    }
+
+    /**
+     * @return the cache entry for the stack trace of the given throwable or {@code null} if caching is disabled
+     */
+    private RenderedTrace cachedTrace(final Throwable throwable) {
+        if (maxCachedTraces <= 0) {
+            return null;
+        }
+
+        final TraceKey key = new TraceKey(throwable);
+        RenderedTrace trace = traces.get(key);
+        if (trace == null) {
+            if (traces.size() >= maxCachedTraces) {
+                // Keep the cache bounded like the frame cache; recurring stack traces will be re-added quickly
+                traces.clear();
+            }
+            trace = new RenderedTrace();
+            final RenderedTrace existing = traces.putIfAbsent(key, trace);
+            if (existing != null) {
+                trace = existing;
+            }
+        }
+        return trace;
+    }
+
+    private void render(final Throwable throwable, final Output output) {
+        final StackTraceElement[] trace = throwable.getStackTrace();
+        renderFrames(trace, trace.length, "", output);
+
+        final Throwable[] suppressed = throwable.getSuppressed();
+        final Throwable cause = throwable.getCause();
+        if (suppressed.length > 0 || cause != null) {
+            final Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+            seen.add(throwable);
+            for (Throwable s : suppressed) {
+                renderEnclosed(s, trace, SUPPRESSED_CAPTION, "\t", 0, output, seen);
+            }
+            if (cause != null) {
+                renderCause(cause, trace, "", 1, output, seen);
+            }
+        }
+    }
+
+    /**
+     * Render the first {@code count} frames of the given stack trace, leaving out filtered frames and frames
+     * exceeding the maximum stack depth.
+     */
+    private void renderFrames(final StackTraceElement[] trace,
+                              final int count,
+                              final String prefix,
+                              final Output output) {
+        int rendered = 0;
+        int omitted = 0;
+        for (int i = 0; i < count; i++) {
+            if (maxStackDepth > 0 && rendered >= maxStackDepth) {
+                omitted += count - i;
+                break;
+            }
+
+            final Frame frame = frame(trace[i]);
+            if (frame.filtered) {
+                omitted++;
+                continue;
+            }
+
+            if (omitted > 0) {
+                renderOmitted(omitted, " frames omitted", prefix, output);
+                omitted = 0;
+            }
+            output.text(prefix);
+            output.frame(frame);
+            rendered++;
+        }
+        if (omitted > 0) {
+            renderOmitted(omitted, " frames omitted", prefix, output);
+        }
+    }
+
+    private static void renderOmitted(final int count, final String text, final String prefix, final Output output) {
+        output.text(prefix);
+        output.text("... ");
+        output.number(count);
+        output.text(text);
+        output.text(LINE_SEPARATOR);
+    }
+
+    private void renderCause(final Throwable cause,
+                             final StackTraceElement[] enclosingTrace,
+                             final String prefix,
+                             final int causeDepth,
+                             final Output output,
+                             final Set<Throwable> seen) {
+        if (maxCauseDepth > 0 && causeDepth > maxCauseDepth && !seen.contains(cause)) {
+            renderOmitted(countCauses(cause, seen), " causes omitted", prefix, output);
+        } else {
+            renderEnclosed(cause, enclosingTrace, CAUSE_CAPTION, prefix, causeDepth, output, seen);
+        }
+    }
+
+    private static int countCauses(final Throwable cause, final Set<Throwable> seen) {
+        final Set<Throwable> counted = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+        int count = 0;
+        for (Throwable t = cause; t != null && !seen.contains(t) && counted.add(t); t = t.getCause()) {
+            count++;
+        }
+        return count;
+    }
+
+    private void renderEnclosed(final Throwable throwable,
+                                final StackTraceElement[] enclosingTrace,
+                                final String caption,
+                                final String prefix,
+                                final int causeDepth,
+                                final Output output,
+                                final Set<Throwable> seen) {
+        if (!seen.add(throwable)) {
+            output.text(prefix);
+            output.text(caption);
+            output.text("[CIRCULAR REFERENCE: ");
+            header(throwable, output);
+            output.text("]");
+            output.text(LINE_SEPARATOR);
+            return;
+        }
+
+        final StackTraceElement[] trace = throwable.getStackTrace();
+        int m = trace.length - 1;
+        int n = enclosingTrace.length - 1;
+        while (m >= 0 && n >= 0 && trace[m].equals(enclosingTrace[n])) {
+            m--;
+            n--;
+        }
+        final int framesInCommon = trace.length - 1 - m;
+
+        output.text(prefix);
+        output.text(caption);
+        header(throwable, output);
+        output.text(LINE_SEPARATOR);
+        renderFrames(trace, m + 1, prefix, output);
+        if (framesInCommon != 0) {
+            renderOmitted(framesInCommon, " more", prefix, output);
+        }
+
+        for (Throwable s : throwable.getSuppressed()) {
+            renderEnclosed(s, trace, SUPPRESSED_CAPTION, prefix + "\t", causeDepth, output, seen);
+        }
+        final Throwable cause = throwable.getCause();
+        if (cause != null) {
+            renderCause(cause, trace, prefix, causeDepth + 1, output, seen);
+        }
+    }
+
+    private static void header(final Throwable throwable, final Output output) {
+        output.text(throwable.getClass().getName());
+        final String message = throwable.getLocalizedMessage();
+        if (message != null) {
+            output.text(": ");
+            output.text(message);
+        }
+    }
+
+    private Frame frame(final StackTraceElement element) {
+        Frame frame = frames.get(element);
+        if (frame == null) {
+            frame = new Frame(element, frameFilter.matches(element.getClassName()));
+            if (frames.size() >= maxCachedFrames) {
+                // Keep the cache bounded; frequently used frames will be re-added quickly
+                frames.clear();
+            }
+            frames.putIfAbsent(element, frame);
+        }
+        return frame;
+    }
+
+    int cachedFrames() {
+        return frames.size();
+    }
+
+    int cachedTraces() {
+        return traces.size();
+    }
+
+    /**
+     * The rendered representations of a stack trace, which are filled in lazily. Racing threads may render the same
+     * stack trace concurrently, but they always produce the same result.
+     */
+    private static final class RenderedTrace {
+        private volatile String text;
+        private volatile byte[] json;
+    }
+
+    /**
+     * Everything that ends up in the rendered stack trace of a throwable, in the order it is rendered.
+     */
+    private static final class TraceKey {
+        private static final Object CIRCULAR_REFERENCE = new Object();
+
+        private final Object[] parts;
+        private final int hash;
+
+        private TraceKey(final Throwable throwable) {
+            final List<Object> list = new ArrayList<>();
+            final Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+            seen.add(throwable);
+            // The header of the throwable itself isn't rendered, only those of its causes and suppressed exceptions
+            collectBody(throwable, list, seen);
+            this.parts = list.toArray();
+            this.hash = Arrays.deepHashCode(parts);
+        }
+
+        private static void collect(final Throwable throwable, final List<Object> list, final Set<Throwable> seen) {
+            final boolean circular = !seen.add(throwable);
+            if (circular) {
+                list.add(CIRCULAR_REFERENCE);
+            }
+            // Class names rather than classes, so that the cache doesn't keep class loaders alive
+            list.add(throwable.getClass().getName());
+            list.add(throwable.getLocalizedMessage());
+            if (!circular) {
+                collectBody(throwable, list, seen);
+            }
+        }
+
+        private static void collectBody(final Throwable throwable, final List<Object> list, final Set<Throwable> seen) {
+            list.add(throwable.getStackTrace());
+            final Throwable[] suppressed = throwable.getSuppressed();
+            list.add(suppressed.length);
+            for (Throwable s : suppressed) {
+                collect(s, list, seen);
+            }
+            final Throwable cause = throwable.getCause();
+            list.add(cause != null);
+            if (cause != null) {
+                collect(cause, list, seen);
+            }
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return this == o || o instanceof TraceKey
+                    && hash == ((TraceKey) o).hash
+                    && Arrays.deepEquals(parts, ((TraceKey) o).parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Frame {
+        private final String text;
+        private final byte[] json;
+        private final boolean filtered;
+
+        private Frame(final StackTraceElement element, final boolean filtered) {
+            this.filtered = filtered;
+            this.text = element.getClassName() + '.' + element.getMethodName()
+                    + '(' + element.getFileName() + ':' + element.getLineNumber() + ')' + LINE_SEPARATOR;
+            final JsonBuffer buffer = new JsonBuffer(text.length() + 16);
+            buffer.writeStringContent(text);
+            this.json = buffer.toByteArray();
+        }
+    }
+
+    private interface Output {
+        void frame(Frame frame);
+
+        void text(String text);
+
+        void number(int number);
+    }
+
+    private static final class StringOutput implements Output {
+        private final StringBuilder sb;
+
+        private StringOutput(final StringBuilder sb) {
+            this.sb = sb;
+        }
+
+        @Override
+        public void frame(final Frame frame) {
+            sb.append(frame.text);
+        }
+
+        @Override
+        public void text(final String text) {
+            sb.append(text);
+        }
+
+        @Override
+        public void number(final int number) {
+            sb.append(number);
+        }
+    }
+
+    private static final class JsonOutput implements Output {
+        private final JsonBuffer buffer;
+
+        private JsonOutput(final JsonBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void frame(final Frame frame) {
+            buffer.writeBytes(frame.json);
+        }
+
+        @Override
+        public void text(final String text) {
+            buffer.writeStringContent(text);
+        }
+
+        @Override
+        public void number(final int number) {
+            buffer.writeLong(number);
+        }
+    }
+}
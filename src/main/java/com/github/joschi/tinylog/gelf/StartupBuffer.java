@@ -0,0 +1,89 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.pmw.tinylog.LogEntry;
+
+import java.util.ArrayDeque;
+
+/**
+ * Holds the log entries which are written while the transport of a {@link GelfWriter} is still being created in the
+ * background.
+ * <p>
+ * The buffer is bounded, log entries which don't fit anymore are dropped and counted by the {@link OverflowPolicy}.
+ * It is only used during startup, so a plain lock is good enough. Once it has been drained, it rejects all further
+ * log entries and they have to be sent directly.
+ */
+final class StartupBuffer {
+    private final ArrayDeque<LogEntry> entries;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private boolean open = true;
+
+    /**
+     * Construct a new StartupBuffer instance.
+     *
+     * @param capacity       the maximum number of buffered log entries
+     * @param overflowPolicy the policy counting the dropped log entries
+     */
+    StartupBuffer(final int capacity, final OverflowPolicy overflowPolicy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+
+        this.entries = new ArrayDeque<>(Math.min(capacity, 1024));
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Buffer a log entry, unless the buffer has already been drained.
+     *
+     * @param logEntry the log entry to buffer
+     * @return {@code true} if the log entry has been buffered or dropped because the buffer is full, {@code false} if
+     * the buffer has been drained and the log entry has to be sent directly
+     */
+    synchronized boolean offer(final LogEntry logEntry) {
+        if (!open) {
+            return false;
+        }
+
+        if (entries.size() < capacity) {
+            entries.add(logEntry);
+        } else {
+            overflowPolicy.dropped();
+        }
+        return true;
+    }
+
+    /**
+     * Take the oldest buffered log entry. Once the buffer is empty, it is closed, so that log entries written
+     * concurrently while draining the buffer are still sent in order.
+     *
+     * @return the oldest buffered log entry, {@code null} if the buffer is empty
+     */
+    synchronized LogEntry poll() {
+        final LogEntry logEntry = entries.poll();
+        if (null == logEntry) {
+            open = false;
+        }
+        return logEntry;
+    }
+
+    /**
+     * Close the buffer and drop all buffered log entries.
+     *
+     * @return the number of dropped log entries
+     */
+    synchronized int discard() {
+        final int discarded = entries.size();
+        for (int i = 0; i < discarded; i++) {
+            overflowPolicy.dropped();
+        }
+        entries.clear();
+        open = false;
+        return discarded;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
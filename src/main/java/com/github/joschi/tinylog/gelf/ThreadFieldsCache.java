@@ -0,0 +1,97 @@
+package com.github.joschi.tinylog.gelf;
+
+import java.util.WeakHashMap;
+
+/**
+ * Caches the encoded {@code _threadName}, {@code _threadGroup} and {@code _threadPriority} fields per thread, so that
+ * the same names don't have to be escaped and encoded for every GELF message.
+ * <p>
+ * The threads are referenced weakly, so terminated threads are removed from the cache once they have been garbage
+ * collected. A cached entry is only rebuilt if the thread has been renamed, its priority has been changed or it has
+ * left its thread group. To keep contention low, the cache is split into stripes which are locked independently.
+ */
+final class ThreadFieldsCache {
+    private static final byte[] THREAD_NAME = JsonBuffer.fieldName("_threadName");
+    private static final byte[] THREAD_GROUP = JsonBuffer.fieldName("_threadGroup");
+    private static final byte[] THREAD_PRIORITY = JsonBuffer.fieldName("_threadPriority");
+    private static final int STRIPES = 16;
+    private static final int INITIAL_FRAGMENT_SIZE = 128;
+
+    private final int maxFieldLength;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * Construct a new ThreadFieldsCache instance.
+     *
+     * @param maxFieldLength the maximum size of a string field in bytes
+     */
+    ThreadFieldsCache(final int maxFieldLength) {
+        this.maxFieldLength = maxFieldLength;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Write the fields of the given thread including their leading commas.
+     *
+     * @return {@code true} if the thread name or thread group name has been truncated, {@code false} otherwise
+     */
+    boolean write(final Thread thread, final JsonBuffer buffer) {
+        final ThreadFields fields = get(thread);
+        buffer.writeBytes(fields.fragment);
+        return fields.truncated;
+    }
+
+    ThreadFields get(final Thread thread) {
+        final String name = thread.getName();
+        final ThreadGroup group = thread.getThreadGroup();
+        final int priority = thread.getPriority();
+
+        final Stripe stripe = stripes[(thread.hashCode() & Integer.MAX_VALUE) % STRIPES];
+        synchronized (stripe) {
+            final ThreadFields cached = stripe.get(thread);
+            if (cached != null && cached.priority == priority && cached.group == group && cached.name.equals(name)) {
+                return cached;
+            }
+        }
+
+        // Encode outside of the lock, at worst two threads encode the same fields
+        final ThreadFields fields = new ThreadFields(name, group, priority, maxFieldLength);
+        synchronized (stripe) {
+            stripe.put(thread, fields);
+        }
+        return fields;
+    }
+
+    static final class ThreadFields {
+        private final String name;
+        private final ThreadGroup group;
+        private final int priority;
+        private final byte[] fragment;
+        private final boolean truncated;
+
+        private ThreadFields(final String name, final ThreadGroup group, final int priority, final int maxFieldLength) {
+            this.name = name;
+            this.group = group;
+            this.priority = priority;
+
+            final JsonBuffer buffer = new JsonBuffer(INITIAL_FRAGMENT_SIZE);
+            buffer.writeBytes(THREAD_NAME);
+            boolean fieldTruncated = GelfEncoder.writeString(name, maxFieldLength, buffer);
+            buffer.writeBytes(THREAD_GROUP);
+            fieldTruncated |= GelfEncoder.writeString(group == null ? null : group.getName(), maxFieldLength, buffer);
+            buffer.writeBytes(THREAD_PRIORITY);
+            buffer.writeLong(priority);
+            this.fragment = buffer.toByteArray();
+            this.truncated = fieldTruncated;
+        }
+
+        byte[] getFragment() {
+            return fragment;
+        }
+    }
+
+    private static final class Stripe extends WeakHashMap<Thread, ThreadFields> {
+    }
+}
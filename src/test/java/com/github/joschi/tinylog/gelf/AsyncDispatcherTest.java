@@ -0,0 +1,118 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.graylog2.gelfclient.GelfMessage;
+import org.graylog2.gelfclient.transport.GelfTransport;
+import org.junit.Test;
+import org.pmw.tinylog.Level;
+import org.pmw.tinylog.LogEntry;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class AsyncDispatcherTest {
+    @Test
+    public void dispatchesAllEntriesBeforeStopping() throws Exception {
+        final GelfTransport transport = mock(GelfTransport.class);
+        final AsyncDispatcher dispatcher = new AsyncDispatcher(new GelfWriter("localhost"), transport, 4,
+                OverflowPolicy.block());
+        final LogEntry logEntry = new LogEntry(new Date(), null, null, null, null, null, -1, Level.INFO, "Test", null);
+
+        dispatcher.start();
+        for (int i = 0; i < 100; i++) {
+            dispatcher.enqueue(logEntry);
+        }
+        dispatcher.stop(10000L);
+
+        verify(transport, times(100)).send(any(GelfMessage.class));
+    }
+
+    @Test
+    public void flushWaitsForEnqueuedEntries() throws Exception {
+        final GelfTransport transport = mock(GelfTransport.class);
+        final AsyncDispatcher dispatcher = new AsyncDispatcher(new GelfWriter("localhost"), transport, 16,
+                OverflowPolicy.block());
+
+        dispatcher.start();
+        for (int i = 0; i < 100; i++) {
+            dispatcher.enqueue(logEntry(Level.INFO));
+        }
+        assertThat(dispatcher.flush(10000L), equalTo(0L));
+        verify(transport, times(100)).send(any(GelfMessage.class));
+        dispatcher.stop(10000L);
+    }
+
+    @Test
+    public void flushReportsOutstandingEntries() throws Exception {
+        final AsyncDispatcher dispatcher = new AsyncDispatcher(new GelfWriter("localhost"), mock(GelfTransport.class), 4,
+                OverflowPolicy.parse("DROP_OLDEST"));
+
+        for (int i = 0; i < 6; i++) {
+            dispatcher.enqueue(logEntry(Level.INFO));
+        }
+        assertThat(dispatcher.flush(10L), equalTo(4L));
+    }
+
+    @Test
+    public void dropNewestIfRingBufferIsFull() throws Exception {
+        final OverflowPolicy policy = OverflowPolicy.parse("DROP_NEWEST");
+        final AsyncDispatcher dispatcher = new AsyncDispatcher(new GelfWriter("localhost"), mock(GelfTransport.class), 2,
+                policy);
+
+        assertThat(dispatcher.enqueue(logEntry(Level.INFO)), is(true));
+        assertThat(dispatcher.enqueue(logEntry(Level.INFO)), is(true));
+        assertThat(dispatcher.enqueue(logEntry(Level.ERROR)), is(false));
+        assertThat(dispatcher.size(), equalTo(2));
+        assertThat(policy.getDroppedMessages(), equalTo(1L));
+    }
+
+    @Test
+    public void dropOldestIfRingBufferIsFull() throws Exception {
+        final OverflowPolicy policy = OverflowPolicy.parse("DROP_OLDEST");
+        final AsyncDispatcher dispatcher = new AsyncDispatcher(new GelfWriter("localhost"), mock(GelfTransport.class), 2,
+                policy);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(dispatcher.enqueue(logEntry(Level.INFO)), is(true));
+        }
+        assertThat(dispatcher.size(), equalTo(2));
+        assertThat(policy.getDroppedMessages(), equalTo(3L));
+    }
+
+    @Test
+    public void dropBelowLevelIfRingBufferIsFull() throws Exception {
+        final OverflowPolicy policy = OverflowPolicy.parse("DROP_BELOW_LEVEL(WARNING)");
+        final AsyncDispatcher dispatcher = new AsyncDispatcher(new GelfWriter("localhost"), mock(GelfTransport.class), 2,
+                policy);
+
+        assertThat(dispatcher.enqueue(logEntry(Level.INFO)), is(true));
+        assertThat(dispatcher.enqueue(logEntry(Level.INFO)), is(true));
+        assertThat(dispatcher.enqueue(logEntry(Level.DEBUG)), is(false));
+        assertThat(policy.getDroppedMessages(), equalTo(1L));
+    }
+
+    @Test
+    public void blockWithTimeoutIfRingBufferIsFull() throws Exception {
+        final OverflowPolicy policy = OverflowPolicy.parse("BLOCK_WITH_TIMEOUT(20)");
+        final AsyncDispatcher dispatcher = new AsyncDispatcher(new GelfWriter("localhost"), mock(GelfTransport.class), 2,
+                policy);
+
+        assertThat(dispatcher.enqueue(logEntry(Level.INFO)), is(true));
+        assertThat(dispatcher.enqueue(logEntry(Level.INFO)), is(true));
+        final long start = System.nanoTime();
+        assertThat(dispatcher.enqueue(logEntry(Level.ERROR)), is(false));
+        assertThat(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20L), is(true));
+        assertThat(policy.getDroppedMessages(), equalTo(1L));
+    }
+
+    private static LogEntry logEntry(final Level level) {
+        return new LogEntry(new Date(), null, null, null, null, null, -1, level, "Test", null);
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CompressionTest {
+    private static final byte[] MESSAGE = ("xx{\"version\":\"1.1\",\"host\":\"localhost\",\"short_message\":\"Test Test Test " +
+            "Test Test Test Test Test Test Test Test Test Test Test Test Test\"}xx").getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void parseDefaultsToNone() {
+        assertThat(Compression.parse(null).getType(), is(Compression.Type.NONE));
+        assertThat(Compression.parse(" ").getType(), is(Compression.Type.NONE));
+        assertThat(Compression.parse("none").appliesTo(Integer.MAX_VALUE), is(false));
+    }
+
+    @Test
+    public void parseLevelAndMinimumSize() {
+        final Compression compression = Compression.parse("gzip( 9, 512 )");
+
+        assertThat(compression.getType(), is(Compression.Type.GZIP));
+        assertThat(compression.getLevel(), equalTo(9));
+        assertThat(compression.getMinimumSize(), equalTo(512));
+        assertThat(compression.appliesTo(511), is(false));
+        assertThat(compression.appliesTo(512), is(true));
+        assertThat(compression.toString(), equalTo("GZIP(9, 512)"));
+    }
+
+    @Test
+    public void parseWithoutParameters() {
+        final Compression compression = Compression.parse("ZLIB");
+
+        assertThat(compression.getType(), is(Compression.Type.ZLIB));
+        assertThat(compression.getLevel(), equalTo(Deflater.DEFAULT_COMPRESSION));
+        assertThat(compression.appliesTo(0), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseUnknownCompression() {
+        Compression.parse("BROTLI");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseInvalidLevel() {
+        Compression.parse("GZIP(10)");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseUnexpectedParameter() {
+        Compression.parse("NONE(1)");
+    }
+
+    @Test
+    public void compressGzip() throws IOException {
+        final Compression compression = Compression.parse("GZIP");
+        final JsonBuffer buffer = new JsonBuffer(16);
+
+        // Run twice to make sure the pooled Deflater is reset properly
+        for (int i = 0; i < 2; i++) {
+            buffer.reset();
+            compression.compress(MESSAGE, 2, MESSAGE.length - 4, buffer);
+            assertThat(decompress(new GZIPInputStream(new ByteArrayInputStream(buffer.toByteArray()))),
+                    equalTo(new String(MESSAGE, 2, MESSAGE.length - 4, StandardCharsets.UTF_8)));
+        }
+        compression.close();
+    }
+
+    @Test
+    public void compressZlib() throws IOException {
+        final Compression compression = Compression.parse("ZLIB(1)");
+        final JsonBuffer buffer = new JsonBuffer(16);
+
+        for (int i = 0; i < 2; i++) {
+            buffer.reset();
+            compression.compress(MESSAGE, 2, MESSAGE.length - 4, buffer);
+            assertThat(decompress(new InflaterInputStream(new ByteArrayInputStream(buffer.toByteArray()))),
+                    equalTo(new String(MESSAGE, 2, MESSAGE.length - 4, StandardCharsets.UTF_8)));
+        }
+        compression.close();
+    }
+
+    static String decompress(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
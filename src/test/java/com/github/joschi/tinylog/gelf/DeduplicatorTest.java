@@ -0,0 +1,100 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.junit.Test;
+import org.pmw.tinylog.Level;
+import org.pmw.tinylog.LogEntry;
+
+import java.util.Date;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class DeduplicatorTest {
+    @Test
+    public void disabledDeduplicatorNeverSuppresses() {
+        final Deduplicator deduplicator = Deduplicator.disabled();
+        assertThat(deduplicator.isEnabled(), is(false));
+        assertThat(deduplicator.isDuplicate(entry("Test", null)), is(false));
+        assertThat(deduplicator.isDuplicate(entry("Test", null)), is(false));
+    }
+
+    @Test
+    public void suppressesIdenticalLogEntriesWithinWindow() {
+        // Large enough that no stripe has to evict one of the fingerprints, regardless of their hash codes
+        final Deduplicator deduplicator = new Deduplicator(60000L, 1024);
+        final LogEntry last = entry("Test", new IllegalStateException("2"));
+
+        assertThat(deduplicator.isDuplicate(entry("Test", new IllegalStateException("1"))), is(false));
+        assertThat(deduplicator.isDuplicate(entry("Test", new IllegalStateException("1"))), is(true));
+        assertThat(deduplicator.isDuplicate(last), is(true));
+        assertThat(deduplicator.isDuplicate(entry("Test", new IllegalArgumentException())), is(false));
+        assertThat(deduplicator.isDuplicate(entry("Test", null)), is(false));
+        assertThat(deduplicator.isDuplicate(entry("Other", null)), is(false));
+
+        deduplicator.sweep(false);
+        assertThat(deduplicator.pollExpired(), nullValue());
+
+        deduplicator.sweep(true);
+        final Deduplicator.Repeated repeated = deduplicator.pollExpired();
+        assertThat(repeated.getLogEntry(), sameInstance(last));
+        assertThat(repeated.getRepeatCount(), equalTo(2L));
+        assertThat(deduplicator.pollExpired(), nullValue());
+    }
+
+    @Test
+    public void remembersRepeatCountUntilLookedUp() {
+        final Deduplicator deduplicator = new Deduplicator(60000L, 16);
+        final LogEntry first = entry("Test", null);
+        final LogEntry last = entry("Test", null);
+        deduplicator.isDuplicate(first);
+        deduplicator.isDuplicate(last);
+        deduplicator.sweep(true);
+
+        assertThat(deduplicator.repeatCount(last), equalTo(0L));
+        assertThat(deduplicator.pollExpired().getLogEntry(), sameInstance(last));
+        assertThat(deduplicator.repeatCount(first), equalTo(0L));
+        assertThat(deduplicator.repeatCount(last), equalTo(1L));
+        assertThat(deduplicator.repeatCount(last), equalTo(0L));
+    }
+
+    @Test
+    public void reportsRepeatsWhenWindowHasClosed() throws InterruptedException {
+        final Deduplicator deduplicator = new Deduplicator(100L, 16);
+        deduplicator.isDuplicate(entry("Test", null));
+        deduplicator.isDuplicate(entry("Test", null));
+
+        Thread.sleep(150L);
+        assertThat(deduplicator.isDuplicate(entry("Test", null)), is(false));
+        assertThat(deduplicator.pollExpired().getRepeatCount(), equalTo(1L));
+        assertThat(deduplicator.pollExpired(), nullValue());
+        // The new window starts counting from scratch
+        assertThat(deduplicator.isDuplicate(entry("Test", null)), is(true));
+        deduplicator.sweep(true);
+        assertThat(deduplicator.pollExpired().getRepeatCount(), equalTo(1L));
+    }
+
+    @Test
+    public void reportsRepeatsOfEvictedLogEntries() {
+        final Deduplicator deduplicator = new Deduplicator(60000L, 1);
+        deduplicator.isDuplicate(entry("Test", null));
+        deduplicator.isDuplicate(entry("Test", null));
+        deduplicator.isDuplicate(entry("Test", null));
+        deduplicator.isDuplicate(entry("Other", null));
+
+        assertThat(deduplicator.pollExpired().getRepeatCount(), equalTo(2L));
+        assertThat(deduplicator.isDuplicate(entry("Test", null)), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCacheSize() {
+        new Deduplicator(100L, 0);
+    }
+
+    private static LogEntry entry(final String message, final Throwable throwable) {
+        return new LogEntry(new Date(), null, null, "com.example.Test", "test", null, -1, Level.ERROR, message,
+                throwable);
+    }
+}
@@ -0,0 +1,135 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DiskSpoolTest {
+    private static final long MIN_QUOTA = 2L * 64L * 1024L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void returnsFramesInOrder() throws IOException {
+        final DiskSpool spool = new DiskSpool(temporaryFolder.getRoot(), MIN_QUOTA);
+        assertThat(spool.isEmpty(), is(true));
+
+        append(spool, "xxfirstxx", 2, 5);
+        append(spool, "second", 0, 6);
+        assertThat(spool.size(), equalTo(2L));
+
+        assertThat(peek(spool), equalTo("first"));
+        assertThat(peek(spool), equalTo("first"));
+        spool.remove();
+        assertThat(peek(spool), equalTo("second"));
+        spool.remove();
+        assertThat(spool.isEmpty(), is(true));
+        assertThat(spool.peek(new JsonBuffer(16)), is(false));
+    }
+
+    @Test
+    public void recoversUnconsumedFrames() throws IOException {
+        final File directory = new File(temporaryFolder.getRoot(), "spool");
+        final DiskSpool spool = new DiskSpool(directory, MIN_QUOTA);
+        for (int i = 0; i < 5; i++) {
+            append(spool, "frame" + i, 0, 6);
+        }
+        peek(spool);
+        spool.remove();
+        peek(spool);
+        spool.remove();
+        spool.close();
+
+        final DiskSpool recovered = new DiskSpool(directory, MIN_QUOTA);
+        assertThat(recovered.size(), equalTo(3L));
+        for (int i = 2; i < 5; i++) {
+            assertThat(peek(recovered), equalTo("frame" + i));
+            recovered.remove();
+        }
+        assertThat(recovered.isEmpty(), is(true));
+    }
+
+    @Test
+    public void rotatesSegmentsAndEvictsOldestSegment() throws IOException {
+        final DiskSpool spool = new DiskSpool(temporaryFolder.getRoot(), MIN_QUOTA);
+        final byte[] frame = new byte[spool.getSegmentSize() / 4];
+
+        // Three frames fit into a segment, so the third segment evicts the first one
+        for (int i = 0; i < 7; i++) {
+            frame[0] = (byte) i;
+            assertThat(spool.append(frame, 0, frame.length), is(true));
+        }
+
+        assertThat(spool.getSegmentCount(), equalTo(2));
+        assertThat(spool.getEvictedFrames(), equalTo(3L));
+        assertThat(spool.size(), equalTo(4L));
+
+        final JsonBuffer buffer = new JsonBuffer(16);
+        spool.peek(buffer);
+        assertThat((int) buffer.array()[0], equalTo(3));
+        assertThat(temporaryFolder.getRoot().list().length, equalTo(2));
+    }
+
+    @Test
+    public void keepsDiskUsageWithinQuota() throws IOException {
+        final DiskSpool spool = new DiskSpool(temporaryFolder.getRoot(), MIN_QUOTA);
+        final byte[] frame = new byte[spool.getSegmentSize() / 4];
+        for (int i = 0; i < 100; i++) {
+            assertThat(spool.append(frame, 0, frame.length), is(true));
+        }
+
+        long diskUsage = 0L;
+        for (File file : temporaryFolder.getRoot().listFiles()) {
+            diskUsage += file.length();
+        }
+        assertThat(diskUsage <= MIN_QUOTA, is(true));
+        spool.close();
+    }
+
+    @Test
+    public void deletesConsumedSegments() throws IOException {
+        final DiskSpool spool = new DiskSpool(temporaryFolder.getRoot(), MIN_QUOTA);
+        final byte[] frame = new byte[spool.getSegmentSize() / 4];
+        for (int i = 0; i < 4; i++) {
+            spool.append(frame, 0, frame.length);
+        }
+        assertThat(spool.getSegmentCount(), equalTo(2));
+
+        for (int i = 0; i < 3; i++) {
+            spool.peek(new JsonBuffer(16));
+            spool.remove();
+        }
+        assertThat(spool.getSegmentCount(), equalTo(1));
+        assertThat(temporaryFolder.getRoot().list().length, equalTo(1));
+    }
+
+    @Test
+    public void rejectsFramesLargerThanSegment() throws IOException {
+        final DiskSpool spool = new DiskSpool(temporaryFolder.getRoot(), MIN_QUOTA);
+        final byte[] frame = new byte[spool.getSegmentSize()];
+
+        assertThat(spool.append(frame, 0, frame.length), is(false));
+        assertThat(spool.isEmpty(), is(true));
+    }
+
+    private static void append(final DiskSpool spool, final String frame, final int offset, final int length)
+            throws IOException {
+        final byte[] bytes = frame.getBytes(StandardCharsets.UTF_8);
+        assertThat(spool.append(bytes, offset, length), is(true));
+    }
+
+    private static String peek(final DiskSpool spool) {
+        final JsonBuffer buffer = new JsonBuffer(16);
+        assertThat(spool.peek(buffer), is(true));
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
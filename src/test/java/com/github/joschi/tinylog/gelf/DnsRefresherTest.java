@@ -0,0 +1,67 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DnsRefresherTest {
+    @Test
+    public void redirectsIfAddressChanged() throws Exception {
+        final InetAddress localhost = InetAddress.getByName("localhost");
+        // Pretend that "localhost" resolved to a different address before
+        final InetSocketAddress stale = new InetSocketAddress(
+                InetAddress.getByAddress("localhost", new byte[]{(byte) 192, 0, 2, 1}), 12201);
+        final RecordingTransport transport = new RecordingTransport();
+        final DnsRefresher refresher = new DnsRefresher(60000L);
+        refresher.add(stale, transport);
+
+        refresher.refresh();
+        assertThat(transport.addresses.size(), equalTo(1));
+        assertThat(transport.addresses.get(0), equalTo(new InetSocketAddress(localhost, 12201)));
+
+        refresher.refresh();
+        assertThat(transport.addresses.size(), equalTo(1));
+    }
+
+    @Test
+    public void keepsAddressIfUnchanged() {
+        final RecordingTransport transport = new RecordingTransport();
+        final DnsRefresher refresher = new DnsRefresher(60000L);
+        refresher.add(new InetSocketAddress("localhost", 12201), transport);
+
+        refresher.refresh();
+        assertThat(transport.addresses.isEmpty(), is(true));
+    }
+
+    @Test
+    public void keepsAddressIfUnresolvable() {
+        final RecordingTransport transport = new RecordingTransport();
+        final DnsRefresher refresher = new DnsRefresher(60000L);
+        refresher.add(new InetSocketAddress("127.0.0.1", 12201), transport);
+        refresher.add(InetSocketAddress.createUnresolved("unresolvable.invalid", 12201), transport);
+
+        refresher.refresh();
+        assertThat(transport.addresses.isEmpty(), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidInterval() {
+        new DnsRefresher(0L);
+    }
+
+    private static final class RecordingTransport implements RedirectableTransport {
+        private final List<InetSocketAddress> addresses = new ArrayList<>();
+
+        @Override
+        public void redirect(final InetSocketAddress remoteAddress) {
+            addresses.add(remoteAddress);
+        }
+    }
+}
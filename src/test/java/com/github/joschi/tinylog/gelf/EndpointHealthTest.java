@@ -0,0 +1,65 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class EndpointHealthTest {
+    private static final InetSocketAddress ADDRESS = InetSocketAddress.createUnresolved("localhost", 12201);
+
+    @Test
+    public void opensCircuitAfterConsecutiveFailures() {
+        final EndpointHealth health = new EndpointHealth(ADDRESS, 60000L);
+
+        health.failure();
+        assertThat(health.getState(), is(EndpointHealth.State.CLOSED));
+        assertThat(health.isAvailable(), is(true));
+
+        health.success();
+        health.failure();
+        assertThat(health.getState(), is(EndpointHealth.State.CLOSED));
+
+        health.failure();
+        assertThat(health.getState(), is(EndpointHealth.State.OPEN));
+        assertThat(health.isAvailable(), is(false));
+        assertThat(health.getConsecutiveFailures(), equalTo(2));
+        assertThat(health.tryProbe(), is(false));
+    }
+
+    @Test
+    public void allowsSingleProbeAfterRetryDelay() {
+        final EndpointHealth health = new EndpointHealth(ADDRESS, 0L);
+        health.failure();
+        health.failure();
+
+        assertThat(health.tryProbe(), is(true));
+        assertThat(health.getState(), is(EndpointHealth.State.HALF_OPEN));
+        assertThat(health.isAvailable(), is(false));
+
+        health.failure();
+        assertThat(health.getState(), is(EndpointHealth.State.OPEN));
+
+        assertThat(health.tryProbe(), is(true));
+        health.success();
+        assertThat(health.getState(), is(EndpointHealth.State.CLOSED));
+        assertThat(health.getConsecutiveFailures(), equalTo(0));
+        assertThat(health.tryProbe(), is(false));
+    }
+
+    @Test
+    public void recordsConnectLatency() {
+        final EndpointHealth health = new EndpointHealth(ADDRESS, 0L);
+        assertThat(health.getConnectLatencyNanos(), equalTo(-1L));
+
+        health.failure();
+        health.failure();
+        health.connected(1234L);
+
+        assertThat(health.getConnectLatencyNanos(), equalTo(1234L));
+        assertThat(health.getState(), is(EndpointHealth.State.CLOSED));
+    }
+}
@@ -0,0 +1,277 @@
+package com.github.joschi.tinylog.gelf;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.graylog2.gelfclient.GelfMessage;
+import org.graylog2.gelfclient.GelfMessageLevel;
+import org.junit.Test;
+import org.pmw.tinylog.Level;
+import org.pmw.tinylog.LogEntry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+public class GelfEncoderTest {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    static Map<String, Object> parse(final byte[] bytes, final int offset, final int length) throws IOException {
+        final Map<String, Object> result = new HashMap<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(bytes, offset, length)) {
+            assertThat(parser.nextToken(), is(JsonToken.START_OBJECT));
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                final JsonToken token = parser.nextToken();
+                switch (token) {
+                    case VALUE_NUMBER_INT:
+                        result.put(name, parser.getLongValue());
+                        break;
+                    case VALUE_NUMBER_FLOAT:
+                        result.put(name, parser.getDoubleValue());
+                        break;
+                    case VALUE_NULL:
+                        result.put(name, null);
+                        break;
+                    default:
+                        result.put(name, parser.getText());
+                }
+            }
+            assertThat(parser.nextToken(), nullValue());
+        }
+        return result;
+    }
+
+    static Map<String, Object> parse(final JsonBuffer buffer) throws IOException {
+        return parse(buffer.array(), 0, buffer.size());
+    }
+
+    @Test
+    public void encodeLogEntry() throws IOException {
+        final GelfEncoder encoder = new GelfEncoder("myHostName", Collections.<String, Object>singletonMap("staticField", "TEST"), new StackTraceRenderer(16));
+        final Date now = new Date(1420070400123L);
+        final ThreadGroup threadGroup = new ThreadGroup("TEST-threadGroup");
+        final Thread thread = new Thread(threadGroup, "TEST-thread");
+        thread.setPriority(1);
+        @SuppressWarnings("all")
+        final RuntimeException exception = new RuntimeException("BOOM!");
+
+        final LogEntry logEntry = new LogEntry(now, "TEST-processId", thread,
+                "TEST-ClassName", "TEST-MethodName", "TEST-FileName", 42, Level.WARNING,
+                "Test 123", exception);
+
+        final JsonBuffer buffer = new JsonBuffer(16);
+        encoder.encode(logEntry, buffer);
+        final Map<String, Object> message = parse(buffer);
+
+        assertThat((String) message.get("version"), equalTo("1.1"));
+        assertThat((String) message.get("host"), equalTo("myHostName"));
+        assertThat((String) message.get("short_message"), equalTo("Test 123"));
+        assertThat((Double) message.get("timestamp"), equalTo(1420070400.123d));
+        assertThat((Long) message.get("level"), equalTo((long) GelfMessageLevel.WARNING.getNumericLevel()));
+        assertThat((String) message.get("full_message"), startsWith("Test 123\n\n" + this.getClass().getCanonicalName()));
+        assertThat((String) message.get("_staticField"), equalTo("TEST"));
+        assertThat((String) message.get("_processId"), equalTo("TEST-processId"));
+        assertThat((String) message.get("_threadName"), equalTo("TEST-thread"));
+        assertThat((String) message.get("_threadGroup"), equalTo("TEST-threadGroup"));
+        assertThat((Long) message.get("_threadPriority"), equalTo(1L));
+        assertThat((String) message.get("_sourceClassName"), equalTo("TEST-ClassName"));
+        assertThat((String) message.get("_sourceMethodName"), equalTo("TEST-MethodName"));
+        assertThat((String) message.get("_sourceFileName"), equalTo("TEST-FileName"));
+        assertThat((Long) message.get("_sourceLineNumber"), equalTo(42L));
+        assertThat((String) message.get("_exceptionClass"), equalTo(RuntimeException.class.getCanonicalName()));
+        assertThat((String) message.get("_exceptionMessage"), equalTo("BOOM!"));
+        assertThat((String) message.get("_exceptionStackTrace"), startsWith(this.getClass().getCanonicalName()));
+    }
+
+    @Test
+    public void encodeLogEntryWithoutOptionalValues() throws IOException {
+        final GelfEncoder encoder = new GelfEncoder("myHostName", Collections.<String, Object>emptyMap(), new StackTraceRenderer(16));
+        final LogEntry logEntry = new LogEntry(new Date(0L), null, null, null, null, null, -1, Level.TRACE, "Test", null);
+
+        final JsonBuffer buffer = new JsonBuffer(16);
+        encoder.encode(logEntry, buffer);
+        final Map<String, Object> message = parse(buffer);
+
+        assertThat(message.size(), equalTo(5));
+        assertThat((Double) message.get("timestamp"), equalTo(0d));
+        assertThat((Long) message.get("level"), equalTo((long) GelfMessageLevel.DEBUG.getNumericLevel()));
+    }
+
+    @Test
+    public void encodeLookedUpHostnameOnceAvailable() throws IOException, InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final LocalHostname hostname = new LocalHostname(new Callable<String>() {
+            @Override
+            public String call() throws InterruptedException {
+                release.await();
+                return "dns";
+            }
+        });
+        final GelfEncoder encoder = new GelfEncoder(hostname, Collections.<String, Object>emptyMap(),
+                new StackTraceRenderer(16), 0, 0);
+        final LogEntry logEntry = new LogEntry(new Date(0L), null, null, null, null, null, -1, Level.INFO, "Test", null);
+
+        final JsonBuffer buffer = new JsonBuffer(16);
+        encoder.encode(logEntry, buffer);
+        assertThat((String) parse(buffer).get("host"), equalTo(LocalHostname.FALLBACK));
+
+        release.countDown();
+        LocalHostnameTest.awaitLookup(hostname);
+        buffer.reset();
+        encoder.encode(logEntry, buffer);
+        assertThat((String) parse(buffer).get("host"), equalTo("dns"));
+    }
+
+    @Test
+    public void encodeRepeatCount() throws IOException {
+        final GelfEncoder encoder = new GelfEncoder("myHostName", Collections.<String, Object>emptyMap(), new StackTraceRenderer(16));
+        final LogEntry logEntry = new LogEntry(new Date(0L), null, null, null, null, null, -1, Level.INFO, "Test", null);
+
+        final JsonBuffer buffer = new JsonBuffer(16);
+        encoder.encode(logEntry, 42L, buffer);
+
+        assertThat((Long) parse(buffer).get("_repeat_count"), equalTo(42L));
+    }
+
+    @Test
+    public void encodeEscapesStrings() throws IOException {
+        final String text = "\"quoted\" \\ \n\t\u0001 ä€😀";
+        final GelfEncoder encoder = new GelfEncoder("myHostName", Collections.<String, Object>emptyMap(), new StackTraceRenderer(16));
+        final LogEntry logEntry = new LogEntry(new Date(), null, null, null, null, null, -1, Level.INFO, text, null);
+
+        final JsonBuffer buffer = new JsonBuffer(16);
+        encoder.encode(logEntry, buffer);
+
+        assertThat((String) parse(buffer).get("short_message"), equalTo(text));
+        assertThat(new String(buffer.array(), 0, buffer.size(), StandardCharsets.UTF_8), startsWith("{\"version\":\"1.1\""));
+    }
+
+    @Test
+    public void encodeStaticFields() throws IOException {
+        final Map<String, Object> staticFields = new HashMap<>();
+        staticFields.put("text", "f\u00f6\"o");
+        staticFields.put("_prefixed", "bar");
+        staticFields.put("number", 23);
+        final GelfEncoder encoder = new GelfEncoder("my\"HostName", staticFields, new StackTraceRenderer(16));
+        final LogEntry logEntry = new LogEntry(new Date(), null, null, null, null, null, -1, Level.INFO, "Test", null);
+
+        final JsonBuffer buffer = new JsonBuffer(16);
+        encoder.encode(logEntry, buffer);
+        buffer.reset();
+        encoder.encode(logEntry, buffer);
+        final Map<String, Object> message = parse(buffer);
+
+        assertThat(message.size(), equalTo(8));
+        assertThat((String) message.get("host"), equalTo("my\"HostName"));
+        assertThat((String) message.get("_text"), equalTo("f\u00f6\"o"));
+        assertThat((String) message.get("_prefixed"), equalTo("bar"));
+        assertThat((Long) message.get("_number"), equalTo(23L));
+    }
+
+    @Test
+    public void encodeReusesBuffer() throws IOException {
+        final GelfEncoder encoder = new GelfEncoder("myHostName", Collections.<String, Object>emptyMap(), new StackTraceRenderer(16));
+        final LogEntry logEntry = new LogEntry(new Date(), null, null, null, null, null, -1, Level.INFO, "Test", null);
+        final JsonBuffer buffer = new JsonBuffer(1024);
+
+        encoder.encode(logEntry, buffer);
+        final byte[] array = buffer.array();
+        final int size = buffer.size();
+        buffer.reset();
+        encoder.encode(logEntry, buffer);
+
+        assertThat(buffer.array(), is(array));
+        assertThat(buffer.size(), equalTo(size));
+    }
+
+    @Test
+    public void encodeGelfMessage() throws IOException {
+        final GelfMessage gelfMessage = new GelfMessage("Test", "myHostName");
+        gelfMessage.setTimestamp(1420070400.5d);
+        gelfMessage.setLevel(GelfMessageLevel.ERROR);
+        gelfMessage.addAdditionalField("count", 42);
+        gelfMessage.addAdditionalField("_text", "foo");
+
+        final JsonBuffer buffer = new JsonBuffer(16);
+        GelfEncoder.encode(gelfMessage, buffer);
+        final Map<String, Object> message = parse(buffer);
+
+        assertThat((String) message.get("host"), equalTo("myHostName"));
+        assertThat((String) message.get("short_message"), equalTo("Test"));
+        assertThat((Double) message.get("timestamp"), equalTo(1420070400.5d));
+        assertThat((Long) message.get("level"), equalTo((long) GelfMessageLevel.ERROR.getNumericLevel()));
+        assertThat((Long) message.get("_count"), equalTo(42L));
+        assertThat((String) message.get("_text"), equalTo("foo"));
+    }
+
+    @Test
+    public void encodeTruncatesFieldsWithoutSplittingCharacters() throws IOException {
+        final GelfEncoder encoder = new GelfEncoder("myHostName", Collections.<String, Object>emptyMap(),
+                new StackTraceRenderer(16), 9, 0);
+        final LogEntry logEntry = new LogEntry(new Date(), null, null, "\u0001\u0001", "a\uD83D\uDE00bcdefgh",
+                null, -1, Level.INFO, "\u00e4\u00e4\u00e4\u00e4\u00e4\u00e4", null);
+
+        final JsonBuffer buffer = new JsonBuffer(16);
+        assertThat(encoder.encode(logEntry, 0L, buffer), is(true));
+        final Map<String, Object> message = parse(buffer);
+
+        assertThat((String) message.get("short_message"), equalTo("\u00e4\u00e4\u00e4\u00e4"));
+        assertThat((String) message.get("_sourceClassName"), equalTo("\u0001"));
+        assertThat((String) message.get("_sourceMethodName"), equalTo("a\uD83D\uDE00bcde"));
+        assertThat((String) message.get("_truncated"), equalTo("true"));
+    }
+
+    @Test
+    public void encodeDoesNotMarkShortMessages() throws IOException {
+        final GelfEncoder encoder = new GelfEncoder("myHostName", Collections.<String, Object>emptyMap(),
+                new StackTraceRenderer(16), 9, 1024);
+        final LogEntry logEntry = new LogEntry(new Date(), null, null, null, null, null, -1, Level.INFO, "Test", null);
+
+        final JsonBuffer buffer = new JsonBuffer(16);
+        assertThat(encoder.encode(logEntry, 0L, buffer), is(false));
+
+        assertThat(parse(buffer).containsKey("_truncated"), is(false));
+    }
+
+    @Test
+    public void encodeLimitsMessageSize() throws IOException {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            text.append("\"\u00e4\u20ac\uD83D\uDE00\t");
+        }
+        final Exception exception = new IllegalStateException("BOOM!", new RuntimeException(text.toString()));
+        final LogEntry logEntry = new LogEntry(new Date(), "TEST-processId", Thread.currentThread(), "TEST-ClassName",
+                "TEST-MethodName", "TEST-FileName", 42, Level.ERROR, text.toString(), exception);
+
+        final JsonBuffer buffer = new JsonBuffer(16);
+        for (int maxMessageSize = 512; maxMessageSize < 4096; maxMessageSize += 7) {
+            final GelfEncoder encoder = new GelfEncoder("myHostName", Collections.<String, Object>emptyMap(),
+                    new StackTraceRenderer(16), 0, maxMessageSize);
+            buffer.reset();
+            assertThat(encoder.encode(logEntry, 0L, buffer), is(true));
+            assertThat(buffer.size() <= maxMessageSize, is(true));
+
+            final Map<String, Object> message = parse(buffer);
+            assertThat(text.toString(), startsWith((String) message.get("short_message")));
+            assertThat((String) message.get("_exceptionMessage"), equalTo("BOOM!"));
+            assertThat((String) message.get("_truncated"), equalTo("true"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encoderRejectsNegativeLimits() {
+        new GelfEncoder("myHostName", Collections.<String, Object>emptyMap(), new StackTraceRenderer(16), -1, 0);
+    }
+}
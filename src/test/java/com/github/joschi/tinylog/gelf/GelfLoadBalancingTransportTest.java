@@ -0,0 +1,223 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.graylog2.gelfclient.GelfMessage;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class GelfLoadBalancingTransportTest {
+    private static final byte[] FRAME = {'{', '}'};
+
+    @Test
+    public void roundRobinUsesAllTransportsInTurn() throws Exception {
+        final CountingTransport[] transports = transports(3);
+        final GelfLoadBalancingTransport transport = new GelfLoadBalancingTransport(Arrays.asList(transports),
+                GelfLoadBalancingTransport.Strategy.ROUND_ROBIN);
+
+        for (int i = 0; i < 30; i++) {
+            transport.send(FRAME, 0, FRAME.length);
+        }
+
+        for (CountingTransport t : transports) {
+            assertThat(t.sent, equalTo(10));
+        }
+    }
+
+    @Test
+    public void leastOutstandingPrefersTransportWithFewestPendingMessages() throws Exception {
+        final CountingTransport[] transports = transports(3);
+        transports[0].pending = 5L;
+        transports[1].pending = 1L;
+        transports[2].pending = 3L;
+        final GelfLoadBalancingTransport transport = new GelfLoadBalancingTransport(Arrays.asList(transports),
+                GelfLoadBalancingTransport.Strategy.LEAST_OUTSTANDING);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(transport.select(), equalTo(1));
+        }
+        assertThat(transport.getPendingMessages(), equalTo(9L));
+    }
+
+    @Test
+    public void powerOfTwoChoicesPrefersLessLoadedTransport() throws Exception {
+        final CountingTransport[] transports = transports(2);
+        transports[0].pending = 100L;
+        final GelfLoadBalancingTransport transport = new GelfLoadBalancingTransport(Arrays.asList(transports),
+                GelfLoadBalancingTransport.Strategy.POWER_OF_TWO_CHOICES);
+
+        // With two transports both of them are always compared
+        for (int i = 0; i < 10; i++) {
+            assertThat(transport.select(), equalTo(1));
+        }
+    }
+
+    @Test
+    public void triesOtherTransportsIfSelectedTransportIsFull() throws Exception {
+        final CountingTransport[] transports = transports(2);
+        transports[0].full = true;
+        final GelfLoadBalancingTransport transport = new GelfLoadBalancingTransport(Arrays.asList(transports),
+                GelfLoadBalancingTransport.Strategy.ROUND_ROBIN);
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(transport.trySend(FRAME, 0, FRAME.length), is(true));
+        }
+        assertThat(transports[1].sent, equalTo(4));
+
+        transports[1].full = true;
+        assertThat(transport.trySend(FRAME, 0, FRAME.length), is(false));
+    }
+
+    @Test
+    public void failoverUsesFirstAvailableTransportAndMovesBackAfterRecovery() throws Exception {
+        final CountingTransport[] transports = transports(3);
+        final GelfLoadBalancingTransport transport = new GelfLoadBalancingTransport(Arrays.asList(transports),
+                GelfLoadBalancingTransport.Strategy.FAILOVER);
+        assertThat(transport.select(), equalTo(0));
+
+        fail(transports[0]);
+        fail(transports[1]);
+        for (int i = 0; i < 10; i++) {
+            assertThat(transport.select(), equalTo(2));
+        }
+
+        transports[1].health.success();
+        assertThat(transport.select(), equalTo(1));
+
+        transports[0].health.success();
+        assertThat(transport.select(), equalTo(0));
+    }
+
+    @Test
+    public void probesUnavailableTransportAfterRetryDelay() throws Exception {
+        final CountingTransport[] transports = {new CountingTransport(0L), new CountingTransport(60000L)};
+        final GelfLoadBalancingTransport transport = new GelfLoadBalancingTransport(Arrays.asList(transports),
+                GelfLoadBalancingTransport.Strategy.FAILOVER);
+        fail(transports[0]);
+
+        assertThat(transport.select(), equalTo(0));
+        assertThat(transports[0].health.getState(), is(EndpointHealth.State.HALF_OPEN));
+    }
+
+    @Test
+    public void skipsUnavailableTransports() throws Exception {
+        final CountingTransport[] transports = transports(3);
+        final GelfLoadBalancingTransport transport = new GelfLoadBalancingTransport(Arrays.asList(transports),
+                GelfLoadBalancingTransport.Strategy.ROUND_ROBIN);
+        fail(transports[1]);
+
+        for (int i = 0; i < 10; i++) {
+            transport.send(FRAME, 0, FRAME.length);
+        }
+        assertThat(transports[0].sent + transports[2].sent, equalTo(10));
+        assertThat(transports[1].sent, equalTo(0));
+        assertThat(transport.getHealth()[1].getState(), is(EndpointHealth.State.OPEN));
+    }
+
+    @Test
+    public void sumsDroppedMessagesOfAllTransports() throws Exception {
+        final GelfFrameTransport[] transports = new GelfFrameTransport[2];
+        for (int i = 0; i < transports.length; i++) {
+            transports[i] = new GelfUdpChannelTransport(InetSocketAddress.createUnresolved("unresolvable.invalid", 12201),
+                    -1, 4, Compression.none(), 60000);
+        }
+        final GelfLoadBalancingTransport transport = new GelfLoadBalancingTransport(Arrays.asList(transports),
+                GelfLoadBalancingTransport.Strategy.ROUND_ROBIN);
+        try {
+            transport.send(FRAME, 0, FRAME.length);
+            transport.send(FRAME, 0, FRAME.length);
+            transport.send(FRAME, 0, FRAME.length);
+
+            assertThat(transport.getDroppedMessages(), equalTo(3L));
+        } finally {
+            transport.stop();
+        }
+    }
+
+    @Test
+    public void parsesStrategy() {
+        assertThat(GelfLoadBalancingTransport.Strategy.parse(null), is(GelfLoadBalancingTransport.Strategy.ROUND_ROBIN));
+        assertThat(GelfLoadBalancingTransport.Strategy.parse(" least_outstanding "),
+                is(GelfLoadBalancingTransport.Strategy.LEAST_OUTSTANDING));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiresTransports() {
+        new GelfLoadBalancingTransport(Arrays.<GelfFrameTransport>asList(),
+                GelfLoadBalancingTransport.Strategy.ROUND_ROBIN);
+    }
+
+    private static CountingTransport[] transports(final int count) {
+        final CountingTransport[] transports = new CountingTransport[count];
+        for (int i = 0; i < count; i++) {
+            transports[i] = new CountingTransport(60000L);
+        }
+        return transports;
+    }
+
+    private static void fail(final CountingTransport transport) {
+        for (int i = 0; i < EndpointHealth.FAILURE_THRESHOLD; i++) {
+            transport.health.failure();
+        }
+    }
+
+    private static class CountingTransport implements GelfFrameTransport, FlushableGelfTransport,
+            HealthTrackingTransport {
+        private final EndpointHealth health;
+        private int sent;
+        private long pending;
+        private boolean full;
+
+        private CountingTransport(final long retryDelayMillis) {
+            health = new EndpointHealth(InetSocketAddress.createUnresolved("localhost", 12201), retryDelayMillis);
+        }
+
+        @Override
+        public EndpointHealth getHealth() {
+            return health;
+        }
+
+        @Override
+        public void send(final byte[] frame, final int offset, final int length) {
+            sent++;
+        }
+
+        @Override
+        public boolean trySend(final byte[] frame, final int offset, final int length) {
+            if (full) {
+                return false;
+            }
+            sent++;
+            return true;
+        }
+
+        @Override
+        public void send(final GelfMessage message) {
+            sent++;
+        }
+
+        @Override
+        public boolean trySend(final GelfMessage message) {
+            sent++;
+            return true;
+        }
+
+        @Override
+        public long flush(final long timeoutMillis) {
+            return pending;
+        }
+
+        @Override
+        public long getPendingMessages() {
+            return pending;
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.graylog2.gelfclient.GelfMessage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class GelfSpoolTransportTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void spoolsWhileTransportIsUnavailable() throws Exception {
+        final RecordingTransport delegate = new RecordingTransport();
+        final GelfSpoolTransport transport = new GelfSpoolTransport(delegate, temporaryFolder.getRoot(), 1024 * 1024);
+        try {
+            transport.send(frame("1"), 0, 1);
+            delegate.available = false;
+            transport.send(frame("2"), 0, 1);
+            assertThat(transport.trySend(frame("3"), 0, 1), is(true));
+            assertThat(transport.getSpooledMessages(), equalTo(2L));
+
+            delegate.available = true;
+            // Messages sent while the spool isn't empty are spooled as well to preserve the order
+            transport.send(frame("4"), 0, 1);
+            assertThat(transport.flush(10000L), equalTo(0L));
+            assertThat(delegate.frames(), equalTo(new String[]{"1", "2", "3", "4"}));
+        } finally {
+            transport.stop();
+        }
+    }
+
+    @Test
+    public void replaysSpoolAfterRestart() throws Exception {
+        final RecordingTransport unavailable = new RecordingTransport();
+        unavailable.available = false;
+        final GelfSpoolTransport transport = new GelfSpoolTransport(unavailable, temporaryFolder.getRoot(), 1024 * 1024);
+        transport.send(frame("1"), 0, 1);
+        transport.send(new GelfMessage("Test", "localhost"));
+        transport.stop();
+        assertThat(transport.flush(0L), equalTo(0L));
+
+        final RecordingTransport delegate = new RecordingTransport();
+        final GelfSpoolTransport restarted = new GelfSpoolTransport(delegate, temporaryFolder.getRoot(), 1024 * 1024);
+        try {
+            assertThat(restarted.flush(10000L), equalTo(0L));
+            assertThat(delegate.frames().length, equalTo(2));
+            assertThat(delegate.frames()[0], equalTo("1"));
+        } finally {
+            restarted.stop();
+        }
+    }
+
+    private static byte[] frame(final String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class RecordingTransport implements GelfFrameTransport {
+        private final List<String> frames = new ArrayList<>();
+        private volatile boolean available = true;
+
+        synchronized String[] frames() {
+            return frames.toArray(new String[frames.size()]);
+        }
+
+        @Override
+        public void send(final byte[] frame, final int offset, final int length) {
+            trySend(frame, offset, length);
+        }
+
+        @Override
+        public synchronized boolean trySend(final byte[] frame, final int offset, final int length) {
+            if (available) {
+                frames.add(new String(frame, offset, length, StandardCharsets.UTF_8));
+            }
+            return available;
+        }
+
+        @Override
+        public void send(final GelfMessage message) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean trySend(final GelfMessage message) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.graylog2.gelfclient.GelfMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class GelfTcpBatchTransportTest {
+    private ServerSocket serverSocket;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        serverSocket.setSoTimeout(10000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        serverSocket.close();
+    }
+
+    @Test
+    public void sendsNullTerminatedFrames() throws Exception {
+        final GelfTcpBatchTransport transport = new GelfTcpBatchTransport(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()),
+                512, 1000, 100, -1, true, 16, 10);
+        try {
+            final byte[] frame = "xx{\"short_message\":\"Test\"}xx".getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < 100; i++) {
+                transport.send(frame, 2, frame.length - 4);
+            }
+            transport.send(new GelfMessage("Test", "localhost"));
+
+            final List<String> frames = readFrames(101);
+            for (int i = 0; i < 100; i++) {
+                assertThat(frames.get(i), equalTo("{\"short_message\":\"Test\"}"));
+            }
+            assertThat(GelfEncoderTest.parse(frames.get(100).getBytes(StandardCharsets.UTF_8), 0,
+                    frames.get(100).length()).get("short_message"), equalTo((Object) "Test"));
+        } finally {
+            transport.stop();
+        }
+    }
+
+    @Test
+    public void flushWaitsUntilFramesHaveBeenWritten() throws Exception {
+        final GelfTcpBatchTransport transport = new GelfTcpBatchTransport(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()),
+                512, 1000, 100, -1, true, 16, 10);
+        try {
+            final byte[] frame = "{\"short_message\":\"Test\"}".getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < 10; i++) {
+                transport.send(frame, 0, frame.length);
+            }
+            assertThat(transport.flush(10000L), equalTo(0L));
+            assertThat(readFrames(10).size(), equalTo(10));
+        } finally {
+            transport.stop();
+        }
+    }
+
+    @Test
+    public void flushReportsOutstandingFrames() throws Exception {
+        final int port = serverSocket.getLocalPort();
+        serverSocket.close();
+        final GelfTcpBatchTransport transport = new GelfTcpBatchTransport(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 512, 1000, 100, -1, true, 16, 10);
+        try {
+            final byte[] frame = "{\"short_message\":\"Test\"}".getBytes(StandardCharsets.UTF_8);
+            transport.send(frame, 0, frame.length);
+            assertThat(transport.flush(50L), equalTo(1L));
+        } finally {
+            transport.stop();
+        }
+    }
+
+    @Test
+    public void tracksHealthOfServer() throws Exception {
+        final int port = serverSocket.getLocalPort();
+        serverSocket.close();
+        final GelfTcpBatchTransport transport = new GelfTcpBatchTransport(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 512, 1000, 10, -1, true, 16, 10);
+        try {
+            assertThat(transport.getHealth().getState(), equalTo(EndpointHealth.State.CLOSED));
+
+            final byte[] frame = "{\"short_message\":\"Test\"}".getBytes(StandardCharsets.UTF_8);
+            transport.send(frame, 0, frame.length);
+            final long deadline = System.currentTimeMillis() + 10000L;
+            while (transport.getHealth().getState() == EndpointHealth.State.CLOSED
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+
+            assertThat(transport.getHealth().getState(), equalTo(EndpointHealth.State.OPEN));
+        } finally {
+            transport.stop();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBatchSize() {
+        new GelfTcpBatchTransport(new InetSocketAddress(12201), 512, 1000, 100, -1, true, 0, 10);
+    }
+
+    private List<String> readFrames(final int count) throws IOException {
+        final List<String> frames = new ArrayList<>(count);
+        try (Socket socket = serverSocket.accept()) {
+            socket.setSoTimeout(10000);
+            final InputStream inputStream = socket.getInputStream();
+            final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+            int b;
+            while (frames.size() < count && (b = inputStream.read()) != -1) {
+                if (b == 0) {
+                    frames.add(new String(frame.toByteArray(), StandardCharsets.UTF_8));
+                    frame.reset();
+                } else {
+                    frame.write(b);
+                }
+            }
+        }
+        return frames;
+    }
+}
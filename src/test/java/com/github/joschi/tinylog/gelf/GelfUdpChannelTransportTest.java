@@ -0,0 +1,185 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.graylog2.gelfclient.GelfMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class GelfUdpChannelTransportTest {
+    private DatagramSocket serverSocket;
+    private GelfUdpChannelTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        serverSocket.setSoTimeout(10000);
+        serverSocket.setReceiveBufferSize(1024 * 1024);
+        transport = new GelfUdpChannelTransport(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()), -1, 4);
+    }
+
+    @After
+    public void tearDown() {
+        transport.stop();
+        serverSocket.close();
+    }
+
+    @Test
+    public void sendsSmallMessagesInSingleDatagram() throws Exception {
+        final byte[] frame = "xx{\"short_message\":\"Test\"}xx".getBytes(StandardCharsets.UTF_8);
+        assertTrue(transport.trySend(frame, 2, frame.length - 4));
+        assertThat(new String(receive(), StandardCharsets.UTF_8), equalTo("{\"short_message\":\"Test\"}"));
+
+        transport.send(new GelfMessage("Test", "localhost"));
+        final byte[] datagram = receive();
+        assertThat(GelfEncoderTest.parse(datagram, 0, datagram.length).get("short_message"), equalTo((Object) "Test"));
+    }
+
+    @Test
+    public void sendsToNewAddressAfterRedirect() throws Exception {
+        try (DatagramSocket otherSocket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            otherSocket.setSoTimeout(10000);
+            final InetSocketAddress otherAddress =
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), otherSocket.getLocalPort());
+            transport.redirect(otherAddress);
+            assertThat(transport.getHealth().getRemoteAddress(), equalTo(otherAddress));
+
+            final byte[] frame = "{\"short_message\":\"Test\"}".getBytes(StandardCharsets.UTF_8);
+            assertTrue(transport.trySend(frame, 0, frame.length));
+            final DatagramPacket packet = new DatagramPacket(new byte[GelfUdpChannelTransport.MAX_CHUNK_SIZE],
+                    GelfUdpChannelTransport.MAX_CHUNK_SIZE);
+            otherSocket.receive(packet);
+            assertThat(new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8),
+                    equalTo("{\"short_message\":\"Test\"}"));
+        }
+    }
+
+    @Test
+    public void splitsLargeMessagesIntoChunks() throws Exception {
+        final byte[] frame = new byte[GelfUdpChannelTransport.MAX_CHUNK_SIZE * 3];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (byte) ('a' + i % 26);
+        }
+        transport.send(frame, 0, frame.length);
+
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        long messageId = 0L;
+        int chunks = -1;
+        for (int i = 0; i < chunks || chunks == -1; i++) {
+            final ByteBuffer chunk = ByteBuffer.wrap(receive());
+            assertThat(chunk.get(), equalTo((byte) 0x1e));
+            assertThat(chunk.get(), equalTo((byte) 0x0f));
+            if (i == 0) {
+                messageId = chunk.getLong();
+            } else {
+                assertThat(chunk.getLong(), equalTo(messageId));
+            }
+            assertThat((int) chunk.get(), equalTo(i));
+            chunks = chunk.get();
+            payload.write(chunk.array(), chunk.position(), chunk.remaining());
+        }
+
+        assertThat(chunks, equalTo(4));
+        assertTrue(Arrays.equals(payload.toByteArray(), frame));
+    }
+
+    @Test
+    public void compressesMessagesAboveMinimumSize() throws Exception {
+        final GelfUdpChannelTransport compressingTransport = new GelfUdpChannelTransport(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()), -1, 4,
+                Compression.parse("GZIP(6, 32)"), 500);
+        try {
+            final byte[] small = "{\"short_message\":\"Test\"}".getBytes(StandardCharsets.UTF_8);
+            compressingTransport.send(small, 0, small.length);
+            assertThat(new String(receive(), StandardCharsets.UTF_8), equalTo("{\"short_message\":\"Test\"}"));
+
+            final byte[] large = "{\"short_message\":\"Test Test Test Test Test Test\"}".getBytes(StandardCharsets.UTF_8);
+            compressingTransport.send(large, 0, large.length);
+            final byte[] datagram = receive();
+            assertThat(CompressionTest.decompress(new GZIPInputStream(new ByteArrayInputStream(datagram))),
+                    equalTo("{\"short_message\":\"Test Test Test Test Test Test\"}"));
+        } finally {
+            compressingTransport.stop();
+        }
+    }
+
+    @Test
+    public void dropsMessagesExceedingMaximumNumberOfChunks() {
+        final byte[] frame = new byte[GelfUdpChannelTransport.MAX_CHUNK_SIZE * GelfUdpChannelTransport.MAX_CHUNKS];
+        assertTrue(transport.trySend(frame, 0, frame.length));
+        assertThat(transport.getDroppedMessages(), equalTo(1L));
+    }
+
+    @Test
+    public void staysUnconnectedWhileServerIsUnresolvable() throws Exception {
+        final GelfUdpChannelTransport unresolvedTransport = new GelfUdpChannelTransport(
+                InetSocketAddress.createUnresolved("unresolvable.invalid", 12201), -1, 4, Compression.none(), 60000);
+        try {
+            final byte[] frame = "{\"short_message\":\"Test\"}".getBytes(StandardCharsets.UTF_8);
+            assertTrue(unresolvedTransport.trySend(frame, 0, frame.length));
+            assertThat(unresolvedTransport.getDroppedMessages(), equalTo(1L));
+            assertTrue(unresolvedTransport.getHealth().getConsecutiveFailures() > 0);
+
+            unresolvedTransport.redirect(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()));
+            assertTrue(unresolvedTransport.trySend(frame, 0, frame.length));
+            assertThat(new String(receive(), StandardCharsets.UTF_8), equalTo("{\"short_message\":\"Test\"}"));
+            assertThat(unresolvedTransport.getDroppedMessages(), equalTo(1L));
+        } finally {
+            unresolvedTransport.stop();
+        }
+    }
+
+    @Test
+    public void resolvesUnresolvedServerAddress() throws Exception {
+        final GelfUdpChannelTransport unresolvedTransport = new GelfUdpChannelTransport(
+                InetSocketAddress.createUnresolved("127.0.0.1", serverSocket.getLocalPort()), -1, 4,
+                Compression.none(), 0);
+        try {
+            final byte[] frame = "{\"short_message\":\"Test\"}".getBytes(StandardCharsets.UTF_8);
+            assertTrue(unresolvedTransport.trySend(frame, 0, frame.length));
+            assertThat(new String(receive(), StandardCharsets.UTF_8), equalTo("{\"short_message\":\"Test\"}"));
+            assertThat(unresolvedTransport.getHealth().getRemoteAddress().isUnresolved(), equalTo(false));
+        } finally {
+            unresolvedTransport.stop();
+        }
+    }
+
+    @Test
+    public void survivesInterruptedSender() throws Exception {
+        final byte[] frame = "{\"short_message\":\"Test\"}".getBytes(StandardCharsets.UTF_8);
+        Thread.currentThread().interrupt();
+        try {
+            transport.send(frame, 0, frame.length);
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        assertTrue(transport.trySend(frame, 0, frame.length));
+        assertThat(new String(receive(), StandardCharsets.UTF_8), equalTo("{\"short_message\":\"Test\"}"));
+        assertThat(new String(receive(), StandardCharsets.UTF_8), equalTo("{\"short_message\":\"Test\"}"));
+        assertThat(transport.getDroppedMessages(), equalTo(0L));
+    }
+
+    private byte[] receive() throws IOException {
+        final DatagramPacket packet = new DatagramPacket(new byte[65536], 65536);
+        serverSocket.receive(packet);
+        return Arrays.copyOf(packet.getData(), packet.getLength());
+    }
+}
@@ -6,6 +6,8 @@ import org.graylog2.gelfclient.GelfTransports;
 import org.graylog2.gelfclient.transport.GelfTransport;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.pmw.tinylog.Configurator;
 import org.pmw.tinylog.Level;
 import org.pmw.tinylog.LogEntry;
@@ -14,19 +16,41 @@ import org.pmw.tinylog.writers.ConsoleWriter;
 import org.pmw.tinylog.writers.LogEntryValue;
 import org.pmw.tinylog.writers.Writer;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.startsWith;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class GelfWriterTest {
     @Test
@@ -94,6 +118,92 @@ public class GelfWriterTest {
         assertThat((String) additionalFields.get("exceptionStackTrace"), startsWith(this.getClass().getCanonicalName()));
     }
 
+    @Test
+    public void testWriteWithFrameTransport() throws Exception {
+        final GelfFrameTransport client = mock(GelfFrameTransport.class);
+        final GelfWriter gelfWriter = new GelfWriter("localhost", 12201, GelfTransports.UDP, "myHostName",
+                EnumSet.of(LogEntryValue.PROCESS_ID),
+                Collections.<String, Object>singletonMap("staticField", "TEST"), 512, 1000, 500, -1, false);
+
+        final LogEntry logEntry = new LogEntry(new Date(), "TEST-processId", null,
+                null, null, null, -1, Level.INFO, "Test 123", null);
+
+        gelfWriter.write(client, logEntry);
+
+        final ArgumentCaptor<byte[]> frameCaptor = ArgumentCaptor.forClass(byte[].class);
+        final ArgumentCaptor<Integer> lengthCaptor = ArgumentCaptor.forClass(Integer.class);
+        verify(client).send(frameCaptor.capture(), eq(0), lengthCaptor.capture());
+        verify(client, never()).send(any(GelfMessage.class));
+
+        final Map<String, Object> message = GelfEncoderTest.parse(frameCaptor.getValue(), 0, lengthCaptor.getValue());
+        assertThat((String) message.get("host"), equalTo("myHostName"));
+        assertThat((String) message.get("short_message"), equalTo("Test 123"));
+        assertThat((String) message.get("_processId"), equalTo("TEST-processId"));
+        assertThat((String) message.get("_staticField"), equalTo("TEST"));
+    }
+
+    @Test
+    public void testWriteDropsMessageIfTransportIsFull() throws Exception {
+        final GelfTransport client = mock(GelfTransport.class);
+        when(client.trySend(any(GelfMessage.class))).thenReturn(false);
+        final GelfWriter gelfWriter = new GelfWriter("localhost", 12201, "UDP", "myHostName", null, null, null,
+                "DROP_BELOW_LEVEL(ERROR)", null, null, null, null, null, null, null, null, null, null, null,
+                null, null, null, null, null, null, null);
+        final LogEntry infoEntry = new LogEntry(new Date(), null, null, null, null, null, -1, Level.INFO, "Test", null);
+        final LogEntry errorEntry = new LogEntry(new Date(), null, null, null, null, null, -1, Level.ERROR, "Test", null);
+
+        gelfWriter.write(client, infoEntry);
+        gelfWriter.write(client, errorEntry);
+
+        verify(client).trySend(any(GelfMessage.class));
+        verify(client).send(any(GelfMessage.class));
+        assertThat(gelfWriter.getDroppedMessages(), equalTo(1L));
+    }
+
+    @Test
+    public void testWriteDoesNotRetryOversizedMessage() throws Exception {
+        final GelfWriter gelfWriter = new GelfWriter("localhost", 12201, "UDP", "myHostName", null, null, null,
+                "BLOCK_WITH_TIMEOUT(10000)", null, null, null, null, null, null, null, null, null, null, null,
+                null, null, null, null, null, null, null);
+        final StringBuilder message = new StringBuilder();
+        for (int i = 0; i < GelfUdpChannelTransport.MAX_CHUNK_SIZE * GelfUdpChannelTransport.MAX_CHUNKS; i++) {
+            message.append((char) ('a' + i % 26));
+        }
+        gelfWriter.init(null);
+        try {
+            final long start = System.nanoTime();
+            gelfWriter.write(new LogEntry(new Date(), null, null, null, null, null, -1, Level.INFO, message.toString(),
+                    null));
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000L, is(true));
+            assertThat(gelfWriter.getDroppedMessages(), equalTo(0L));
+        } finally {
+            gelfWriter.close();
+        }
+    }
+
+    @Test
+    public void testWriteTruncatesMessage() throws Exception {
+        final GelfTransport client = mock(GelfTransport.class);
+        final GelfWriter gelfWriter = new GelfWriter("localhost", 12201, "TCP", "myHostName", null, null, null, null,
+                null, null, null, null, null, null, null, null, null, null, null, null, null, null, "8", null, null,
+                null);
+        @SuppressWarnings("all")
+        final RuntimeException exception = new RuntimeException("BOOM!");
+
+        gelfWriter.write(client, new LogEntry(new Date(), null, null, null, null, null, -1, Level.INFO, "Test",
+                exception));
+        gelfWriter.write(client, new LogEntry(new Date(), null, null, null, null, null, -1, Level.INFO,
+                "Test \u00e4\u00e4\u00e4", null));
+
+        final ArgumentCaptor<GelfMessage> argumentCaptor = ArgumentCaptor.forClass(GelfMessage.class);
+        verify(client, times(2)).send(argumentCaptor.capture());
+        final GelfMessage message = argumentCaptor.getAllValues().get(1);
+        assertThat(message.getMessage(), equalTo("Test \u00e4"));
+        assertThat(message.getAdditionalFields().get("truncated"), equalTo((Object) true));
+        assertThat(argumentCaptor.getAllValues().get(0).getFullMessage(), equalTo("Test\n\n"));
+        assertThat(gelfWriter.getTruncatedMessages(), equalTo(2L));
+    }
+
     @Test
     public void testFlush() throws Exception {
         new GelfWriter("localhost").flush();
@@ -109,6 +219,364 @@ public class GelfWriterTest {
         gelfWriter.close();
     }
 
+    @Test
+    public void testCloseAsync() throws Exception {
+        final GelfWriter gelfWriter = new GelfWriter("localhost", 12201, "UDP", null, null, null, "16", "DROP_OLDEST",
+                null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null,
+                null);
+        Configurator.defaultConfig()
+                .writer(gelfWriter)
+                .level(Level.INFO)
+                .activate();
+        Logger.info("Test");
+        gelfWriter.close();
+    }
+
+    @Test
+    public void testFlushAsync() throws Exception {
+        final GelfWriter gelfWriter = new GelfWriter("localhost", 12201, "UDP", null, null, null, "16", null, null,
+                null, null, "5000", null, null, null, null, null, null, null, null, null, null, null, null, null, null);
+        gelfWriter.init(null);
+        try {
+            gelfWriter.write(new LogEntry(new Date(), null, null, null, null, null, -1, Level.INFO, "Test", null));
+            gelfWriter.flush();
+            assertThat(gelfWriter.flush(5000L), equalTo(0L));
+        } finally {
+            gelfWriter.close();
+        }
+    }
+
+    @Test
+    public void testCloseWithUnreachableServerIsBounded() throws Exception {
+        final int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        final GelfWriter gelfWriter = new GelfWriter("localhost", port, "TCP", null, null, null, "16", null, "16", null,
+                null, null, "100", null, null, null, null, null, null, null, null, null, null, null, null, null);
+        gelfWriter.init(null);
+        gelfWriter.write(new LogEntry(new Date(), null, null, null, null, null, -1, Level.INFO, "Test", null));
+
+        final long start = System.nanoTime();
+        gelfWriter.close();
+        assertThat(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5L), is(true));
+    }
+
+    @Test
+    public void testTcpTransportSelection() throws Exception {
+        final int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        final GelfWriter builtIn = new GelfWriter("localhost", port, "TCP", null, null, null);
+        builtIn.init(null);
+        try {
+            assertThat(builtIn.getTransport(), instanceOf(GelfTcpBatchTransport.class));
+        } finally {
+            builtIn.close();
+        }
+
+        final GelfWriter gelfClient = new GelfWriter("localhost", port, "TCP_GELFCLIENT", null, null, null);
+        gelfClient.init(null);
+        try {
+            assertThat(gelfClient.getTransport(), instanceOf(GelfTcpClientTransport.class));
+        } finally {
+            gelfClient.close();
+        }
+    }
+
+    @Test
+    public void testMaxMessageSizeSelectsFrameTransport() throws Exception {
+        final int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        final GelfWriter gelfWriter = new GelfWriter("localhost", port, "TCP", null, null, null, null, null, null,
+                null, null, null, "100", null, null, null, null, null, null, null, null, null, null, "512", null,
+                null);
+        gelfWriter.init(null);
+        try {
+            assertThat(gelfWriter.getTransport(), instanceOf(GelfTcpBatchTransport.class));
+        } finally {
+            gelfWriter.close();
+        }
+    }
+
+    @Test
+    public void testDnsRefreshSelectsRedirectableTcpTransport() throws Exception {
+        final int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        final GelfWriter gelfWriter = new GelfWriter("localhost", port, "TCP", null, null, null, null, null, null,
+                null, null, null, "100", null, null, null, null, null, null, null, null, null, null, null, null,
+                "60000");
+        gelfWriter.init(null);
+        try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            serverSocket.setSoTimeout(10000);
+            assertThat(gelfWriter.getTransport(), instanceOf(RedirectableTransport.class));
+
+            // The old address isn't reachable, so the next connection has to go to the new address
+            ((RedirectableTransport) gelfWriter.getTransport()).redirect(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()));
+            gelfWriter.write(new LogEntry(new Date(), null, null, null, null, null, -1, Level.INFO, "Test", null));
+
+            try (Socket socket = serverSocket.accept()) {
+                socket.setSoTimeout(10000);
+                final Map<String, Object> message = receive(socket.getInputStream());
+                assertThat(message.get("short_message"), equalTo((Object) "Test"));
+            }
+        } finally {
+            gelfWriter.close();
+        }
+    }
+
+    @Test
+    public void testParseEndpoints() {
+        final List<InetSocketAddress> endpoints = GelfWriter.parseEndpoints(
+                "graylog1.example.com, graylog2.example.com:12202,[::1]:12203,::1,", 12201);
+
+        assertThat(endpoints.size(), equalTo(4));
+        assertThat(endpoints.get(0).getHostString(), equalTo("graylog1.example.com"));
+        assertThat(endpoints.get(0).getPort(), equalTo(12201));
+        assertThat(endpoints.get(1).getHostString(), equalTo("graylog2.example.com"));
+        assertThat(endpoints.get(1).getPort(), equalTo(12202));
+        assertThat(endpoints.get(2).getPort(), equalTo(12203));
+        assertThat(endpoints.get(3).getPort(), equalTo(12201));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseEndpointsWithoutServer() {
+        GelfWriter.parseEndpoints(" , ", 12201);
+    }
+
+    @Test
+    public void testWriteToMultipleServers() throws Exception {
+        final GelfWriter gelfWriter = new GelfWriter("localhost:12201,localhost:12202", 12201, "UDP", null, null, null,
+                null, null, null, null, null, null, null, null, null, "LEAST_OUTSTANDING", null, null, null,
+                null, null, null, null, null, null, null);
+        gelfWriter.init(null);
+        try {
+            gelfWriter.write(new LogEntry(new Date(), null, null, null, null, null, -1, Level.INFO, "Test", null));
+        } finally {
+            gelfWriter.close();
+        }
+    }
+
+    @Test
+    public void testRateLimit() throws Exception {
+        final GelfWriter gelfWriter = new GelfWriter("localhost", 12201, "UDP", null, null, null,
+                null, null, null, null, null, null, null, null, null, null, "DEBUG(1, 2)", null, null,
+                null, null, null, null, null, null, null);
+        gelfWriter.init(null);
+        try {
+            for (int i = 0; i < 10; i++) {
+                gelfWriter.write(new LogEntry(new Date(), null, null, null, null, null, -1, Level.DEBUG, "Test", null));
+                gelfWriter.write(new LogEntry(new Date(), null, null, null, null, null, -1, Level.ERROR, "Test", null));
+            }
+            assertThat(gelfWriter.getSuppressedMessages(), equalTo(8L));
+        } finally {
+            gelfWriter.close();
+        }
+    }
+
+    @Test
+    public void testDeduplication() throws Exception {
+        assertDeduplication(null);
+    }
+
+    @Test
+    public void testDeduplicationWithAsyncDispatcher() throws Exception {
+        assertDeduplication("16");
+    }
+
+    private static void assertDeduplication(final String asyncBufferSize) throws Exception {
+        try (DatagramSocket serverSocket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            serverSocket.setSoTimeout(10000);
+            final GelfWriter gelfWriter = new GelfWriter("localhost", serverSocket.getLocalPort(), "UDP", null, null,
+                    null, asyncBufferSize, null, null, null, null, null, null, null, null, null, null, "50", null,
+                    null, null, null, null, null, null, null);
+            gelfWriter.init(null);
+            try {
+                for (int i = 0; i < 5; i++) {
+                    gelfWriter.write(new LogEntry(new Date(), null, null, null, null, null, -1, Level.ERROR, "Test",
+                            null));
+                }
+                TimeUnit.MILLISECONDS.sleep(100L);
+                gelfWriter.write(new LogEntry(new Date(), null, null, null, null, null, -1, Level.ERROR, "Other", null));
+
+                final Map<String, Object> first = receive(serverSocket);
+                final Map<String, Object> repeated = receive(serverSocket);
+                final Map<String, Object> other = receive(serverSocket);
+                assertThat(first.get("short_message"), equalTo((Object) "Test"));
+                assertThat(first.containsKey("_repeat_count"), is(false));
+                assertThat(repeated.get("short_message"), equalTo((Object) "Test"));
+                assertThat(((Number) repeated.get("_repeat_count")).longValue(), equalTo(4L));
+                assertThat(other.get("short_message"), equalTo((Object) "Other"));
+            } finally {
+                gelfWriter.close();
+            }
+        }
+    }
+
+    @Test
+    public void testStartupBuffer() throws Exception {
+        try (DatagramSocket serverSocket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            serverSocket.setSoTimeout(10000);
+            final GelfWriter gelfWriter = new GelfWriter("localhost", serverSocket.getLocalPort(), "UDP", null, null,
+                    null, null, null, null, null, null, null, null, null, null, null, null, null, null,
+                    null, null, null, null, null, "16", null);
+            gelfWriter.init(null);
+            try {
+                for (int i = 0; i < 3; i++) {
+                    gelfWriter.write(new LogEntry(new Date(), null, null, null, null, null, -1, Level.INFO, "Test" + i,
+                            null));
+                }
+                assertThat(gelfWriter.flush(10000L), equalTo(0L));
+
+                for (int i = 0; i < 3; i++) {
+                    assertThat(receive(serverSocket).get("short_message"), equalTo((Object) ("Test" + i)));
+                }
+                assertThat(gelfWriter.getQueueDepth(), equalTo(0L));
+            } finally {
+                gelfWriter.close();
+            }
+        }
+    }
+
+    @Test
+    public void testCloseWaitsForSlowStartWithinCloseTimeout() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final GelfWriter gelfWriter = new GelfWriter("localhost", 12201, "TCP", null, null, null, null, null, null,
+                null, null, null, "1000", null, null, null, null, null, null, null, null, null, null, null, "16",
+                null);
+        gelfWriter.init(null, new GelfWriter.TransportFactory() {
+            @Override
+            public GelfTransport create(final DnsRefresher refresher) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return mock(GelfTransport.class);
+            }
+        });
+        try {
+            gelfWriter.write(new LogEntry(new Date(), null, null, null, null, null, -1, Level.INFO, "Test", null));
+
+            final long start = System.nanoTime();
+            gelfWriter.close();
+            assertThat(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1800L), is(true));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testCloseStopsTransportWithinCloseTimeout() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final GelfTransport client = mock(GelfTransport.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws InterruptedException {
+                release.await();
+                return null;
+            }
+        }).when(client).stop();
+        final GelfWriter gelfWriter = new GelfWriter("localhost", 12201, "TCP", null, null, null, null, null, null,
+                null, null, null, "1000", null, null, null, null, null, null, null, null, null, null, null, null,
+                null);
+        gelfWriter.init(null, new GelfWriter.TransportFactory() {
+            @Override
+            public GelfTransport create(final DnsRefresher refresher) {
+                return client;
+            }
+        });
+        try {
+            final long start = System.nanoTime();
+            gelfWriter.close();
+            assertThat(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1800L), is(true));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testAsyncWriteFromTerminatedThread() throws Exception {
+        final GelfTransport client = mock(GelfTransport.class);
+        final GelfWriter gelfWriter = new GelfWriter("localhost", 12201, "TCP", null, null, null, "16", null, null,
+                null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null);
+        gelfWriter.init(null, new GelfWriter.TransportFactory() {
+            @Override
+            public GelfTransport create(final DnsRefresher refresher) {
+                return client;
+            }
+        });
+        try {
+            final Thread thread = new Thread("short-lived");
+            thread.start();
+            thread.join();
+
+            gelfWriter.write(new LogEntry(new Date(), null, thread, null, null, null, -1, Level.INFO, "Test", null));
+            assertThat(gelfWriter.flush(10000L), equalTo(0L));
+
+            final ArgumentCaptor<GelfMessage> argumentCaptor = ArgumentCaptor.forClass(GelfMessage.class);
+            verify(client).send(argumentCaptor.capture());
+            assertThat(argumentCaptor.getValue().getAdditionalFields().get("threadName"),
+                    equalTo((Object) "short-lived"));
+        } finally {
+            gelfWriter.close();
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try (DatagramSocket serverSocket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            serverSocket.setSoTimeout(10000);
+            final GelfWriter gelfWriter = new GelfWriter("localhost", serverSocket.getLocalPort());
+            final GelfWriterMetrics metrics = gelfWriter.getMetrics();
+            gelfWriter.init(null);
+            final ObjectName objectName = metrics.getObjectName();
+            try {
+                for (int i = 0; i < 3; i++) {
+                    gelfWriter.write(new LogEntry(new Date(), null, null, null, null, null, -1, Level.INFO, "Test",
+                            null));
+                    receive(serverSocket);
+                }
+
+                assertThat(RecordingMetricsExporter.REGISTERED.contains(metrics), is(true));
+                assertThat(objectName.getKeyProperty("type"), equalTo("GelfWriter"));
+                assertThat(mBeanServer.getAttribute(objectName, "WrittenMessages"), equalTo((Object) 3L));
+                assertThat(metrics.getWrittenBytes() > 0L, is(true));
+                assertThat(metrics.getEncodeLatency().getCount(), equalTo(3L));
+                assertThat(metrics.getSendLatency().getCount(), equalTo(3L));
+                assertThat(metrics.getQueueDepth(), equalTo(0L));
+                assertThat(metrics.getUnavailableServers(), equalTo(0));
+            } finally {
+                gelfWriter.close();
+            }
+
+            assertThat(mBeanServer.isRegistered(objectName), is(false));
+            assertThat(RecordingMetricsExporter.REGISTERED.contains(metrics), is(false));
+        }
+    }
+
+    private static Map<String, Object> receive(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        int b;
+        while ((b = inputStream.read()) > 0) {
+            frame.write(b);
+        }
+        return GelfEncoderTest.parse(frame.toByteArray(), 0, frame.size());
+    }
+
+    private static Map<String, Object> receive(final DatagramSocket serverSocket) throws IOException {
+        final DatagramPacket packet = new DatagramPacket(new byte[8192], 8192);
+        serverSocket.receive(packet);
+        return GelfEncoderTest.parse(packet.getData(), packet.getOffset(), packet.getLength());
+    }
+
     @Test
     public void testLogging() {
         Configurator.defaultConfig()
@@ -138,6 +606,14 @@ public class GelfWriterTest {
         Logger.error("Test {}", 1234);
     }
 
+    @Test
+    public void testLoggingFromPropertiesWithOptionalSettings() throws IOException {
+        Configurator.fromResource("gelf-writer-async.properties").activate();
+
+        Logger.info("Test");
+        Logger.info("Test {}", 1234);
+    }
+
     @Test
     public void testLoggingFromProperties() throws IOException {
         Configurator.fromResource("gelf-writer.properties").activate();
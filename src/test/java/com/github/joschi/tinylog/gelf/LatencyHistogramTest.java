@@ -0,0 +1,66 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LatencyHistogramTest {
+    @Test
+    public void bucketsCoverValuesWithLimitedError() {
+        int previousIndex = -1;
+        for (long value = 0L; value < Long.MAX_VALUE / 3L && value >= 0L; value = value * 3L / 2L + 1L) {
+            final int index = LatencyHistogram.index(value);
+            final long highestValue = LatencyHistogram.highestValue(index);
+
+            assertThat(index >= previousIndex, is(true));
+            assertThat(value <= highestValue, is(true));
+            assertThat(highestValue - value <= value / 32L, is(true));
+            previousIndex = index;
+        }
+        assertThat(LatencyHistogram.highestValue(LatencyHistogram.index(Long.MAX_VALUE)), equalTo(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1L; i <= 1000L; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertThat(histogram.getCount(), equalTo(1000L));
+        assertThat(histogram.getMax(), equalTo(1000000L));
+        assertThat(histogram.getMean(), equalTo(500500d));
+        assertWithin(histogram.getValueAtPercentile(50d), 500000L);
+        assertWithin(histogram.getValueAtPercentile(99d), 990000L);
+        assertThat(histogram.getValueAtPercentile(100d), equalTo(1000000L));
+        assertWithin(histogram.getValueAtPercentile(0d), 1000L);
+    }
+
+    @Test
+    public void emptyHistogram() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        assertThat(histogram.getCount(), equalTo(0L));
+        assertThat(histogram.getMean(), equalTo(0d));
+        assertThat(histogram.getValueAtPercentile(99d), equalTo(0L));
+    }
+
+    @Test
+    public void negativeValuesAreRecordedAsZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5L);
+
+        assertThat(histogram.getValueAtPercentile(100d), equalTo(0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPercentile() {
+        new LatencyHistogram().getValueAtPercentile(101d);
+    }
+
+    private static void assertWithin(final long actual, final long expected) {
+        assertThat(actual + " is not within 3% of " + expected, Math.abs(actual - expected) <= expected / 32L, is(true));
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class LocalHostnameTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void usesConfiguredHostname() {
+        assertThat(LocalHostname.of("myHostName").get(), equalTo("myHostName"));
+    }
+
+    @Test
+    public void readsEnvironmentVariables() {
+        final Map<String, String> environment = new HashMap<>();
+        assertThat(LocalHostname.fromEnvironment(environment), nullValue());
+
+        environment.put("COMPUTERNAME", "WINDOWS");
+        assertThat(LocalHostname.fromEnvironment(environment), equalTo("WINDOWS"));
+
+        environment.put("HOSTNAME", " linux\n");
+        assertThat(LocalHostname.fromEnvironment(environment), equalTo("linux"));
+
+        environment.put("HOSTNAME", " ");
+        assertThat(LocalHostname.fromEnvironment(environment), equalTo("WINDOWS"));
+    }
+
+    @Test
+    public void readsFile() throws IOException {
+        final File file = temporaryFolder.newFile("hostname");
+        assertThat(LocalHostname.fromFile(file), nullValue());
+
+        Files.write(file.toPath(), "kernel\n".getBytes(StandardCharsets.UTF_8));
+        assertThat(LocalHostname.fromFile(file), equalTo("kernel"));
+
+        assertThat(LocalHostname.fromFile(new File(temporaryFolder.getRoot(), "missing")), nullValue());
+    }
+
+    @Test
+    public void usesFallbackUntilLookupHasCompleted() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final LocalHostname hostname = new LocalHostname(new Callable<String>() {
+            @Override
+            public String call() throws InterruptedException {
+                release.await();
+                return "dns";
+            }
+        });
+
+        assertThat(hostname.get(), equalTo(LocalHostname.FALLBACK));
+        release.countDown();
+        assertThat(awaitLookup(hostname), equalTo("dns"));
+        assertThat(hostname.get(), equalTo("dns"));
+    }
+
+    @Test
+    public void fallsBackIfLookupFails() throws InterruptedException {
+        final LocalHostname hostname = new LocalHostname(new Callable<String>() {
+            @Override
+            public String call() throws UnknownHostException {
+                throw new UnknownHostException("test");
+            }
+        });
+
+        Thread.sleep(50L);
+        assertThat(hostname.get(), equalTo(LocalHostname.FALLBACK));
+        assertThat(hostname.get(), equalTo(LocalHostname.FALLBACK));
+    }
+
+    static String awaitLookup(final LocalHostname hostname) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        String current = hostname.get();
+        while (LocalHostname.FALLBACK.equals(current) && System.nanoTime() - deadline < 0L) {
+            Thread.sleep(10L);
+            current = hostname.get();
+        }
+        return current;
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.junit.Test;
+import org.pmw.tinylog.Level;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class OverflowPolicyTest {
+    @Test
+    public void parseDefaultsToBlock() {
+        assertThat(OverflowPolicy.parse(null).getType(), is(OverflowPolicy.Type.BLOCK));
+        assertThat(OverflowPolicy.parse(" ").getType(), is(OverflowPolicy.Type.BLOCK));
+    }
+
+    @Test
+    public void parseSimplePolicies() {
+        assertThat(OverflowPolicy.parse("BLOCK").getType(), is(OverflowPolicy.Type.BLOCK));
+        assertThat(OverflowPolicy.parse("drop_newest").getType(), is(OverflowPolicy.Type.DROP_NEWEST));
+        assertThat(OverflowPolicy.parse(" DROP_OLDEST ").getType(), is(OverflowPolicy.Type.DROP_OLDEST));
+    }
+
+    @Test
+    public void parseDropBelowLevel() {
+        final OverflowPolicy policy = OverflowPolicy.parse("DROP_BELOW_LEVEL(WARNING)");
+
+        assertThat(policy.getType(), is(OverflowPolicy.Type.DROP_BELOW_LEVEL));
+        assertThat(policy.blocks(Level.INFO), is(false));
+        assertThat(policy.blocks(Level.WARNING), is(true));
+        assertThat(policy.blocks(Level.ERROR), is(true));
+        assertThat(policy.toString(), equalTo("DROP_BELOW_LEVEL(WARNING)"));
+    }
+
+    @Test
+    public void parseBlockWithTimeout() {
+        final OverflowPolicy policy = OverflowPolicy.parse("BLOCK_WITH_TIMEOUT( 250 )");
+
+        assertThat(policy.getType(), is(OverflowPolicy.Type.BLOCK_WITH_TIMEOUT));
+        assertThat(policy.getTimeoutNanos(), equalTo(TimeUnit.MILLISECONDS.toNanos(250L)));
+        assertThat(policy.blocks(Level.ERROR), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseUnknownPolicy() {
+        OverflowPolicy.parse("DROP_EVERYTHING");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseMissingParameter() {
+        OverflowPolicy.parse("BLOCK_WITH_TIMEOUT");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseUnexpectedParameter() {
+        OverflowPolicy.parse("DROP_NEWEST(42)");
+    }
+
+    @Test
+    public void countsDroppedMessages() {
+        final OverflowPolicy policy = OverflowPolicy.parse("DROP_NEWEST");
+        policy.dropped();
+        policy.dropped();
+
+        assertThat(policy.getDroppedMessages(), equalTo(2L));
+    }
+}
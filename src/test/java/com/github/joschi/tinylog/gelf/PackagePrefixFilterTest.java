@@ -0,0 +1,41 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PackagePrefixFilterTest {
+    @Test
+    public void matchesPrefixes() {
+        final PackagePrefixFilter filter = PackagePrefixFilter.of("sun.reflect.", " java.lang.reflect. ", "java.lang.r",
+                "org.springframework.");
+
+        assertThat(filter.matches("sun.reflect.NativeMethodAccessorImpl"), is(true));
+        assertThat(filter.matches("java.lang.reflect.Method"), is(true));
+        assertThat(filter.matches("java.lang.Runnable"), is(false));
+        assertThat(filter.matches("java.lang.ref.Reference"), is(true));
+        assertThat(filter.matches("org.springframework.aop.framework.ReflectiveMethodInvocation"), is(true));
+        assertThat(filter.matches("org.spring"), is(false));
+        assertThat(filter.matches("sun.misc.Unsafe"), is(false));
+        assertThat(filter.matches("com.example.Foo"), is(false));
+        assertThat(filter.matches(""), is(false));
+    }
+
+    @Test
+    public void ignoresBlankPrefixes() {
+        assertThat(PackagePrefixFilter.of((String[]) null).isEmpty(), is(true));
+        assertThat(PackagePrefixFilter.of("", "  ").isEmpty(), is(true));
+        assertThat(PackagePrefixFilter.of("", "  ").matches("com.example.Foo"), is(false));
+        assertThat(PackagePrefixFilter.none().matches("com.example.Foo"), is(false));
+    }
+
+    @Test
+    public void shorterPrefixWins() {
+        final PackagePrefixFilter filter = PackagePrefixFilter.of("com.example.internal.", "com.example.");
+
+        assertThat(filter.matches("com.example.Foo"), is(true));
+        assertThat(filter.matches("com.example.internal.Bar"), is(true));
+        assertThat(filter.matches("com.other.Foo"), is(false));
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.junit.Test;
+import org.pmw.tinylog.Level;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class RateLimiterTest {
+    @Test
+    public void unlimitedByDefault() {
+        final RateLimiter rateLimiter = RateLimiter.parse(null);
+        for (int i = 0; i < 10000; i++) {
+            assertThat(rateLimiter.tryAcquire(Level.TRACE), is(true));
+        }
+        assertThat(rateLimiter.pollSummary(true), nullValue());
+        assertThat(rateLimiter.toString(), equalTo("unlimited"));
+    }
+
+    @Test
+    public void parsesRateLimit() {
+        assertThat(RateLimiter.parse(" debug(100, 1000) , INFO( 10 ) ").toString(),
+                equalTo("DEBUG(100, 1000), INFO(10, 10)"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void errorCannotBeLimited() {
+        RateLimiter.parse("ERROR(10)");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRateLimit() {
+        RateLimiter.parse("DEBUG(10");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRate() {
+        RateLimiter.parse("DEBUG(0)");
+    }
+
+    @Test
+    public void limitsBurstPerLevel() {
+        // A rate of one message per second doesn't refill the bucket while the test is running
+        final RateLimiter rateLimiter = RateLimiter.parse("DEBUG(1, 5), INFO(1, 2)");
+
+        int debug = 0;
+        int info = 0;
+        int warning = 0;
+        for (int i = 0; i < 10; i++) {
+            debug += rateLimiter.tryAcquire(Level.DEBUG) ? 1 : 0;
+            info += rateLimiter.tryAcquire(Level.INFO) ? 1 : 0;
+            warning += rateLimiter.tryAcquire(Level.WARNING) ? 1 : 0;
+        }
+
+        assertThat(debug, equalTo(5));
+        assertThat(info, equalTo(2));
+        assertThat(warning, equalTo(10));
+        assertThat(rateLimiter.getSuppressedMessages(), equalTo(13L));
+    }
+
+    @Test
+    public void refillsBucketOverTime() throws InterruptedException {
+        final RateLimiter rateLimiter = RateLimiter.parse("INFO(100, 1)");
+        assertThat(rateLimiter.tryAcquire(Level.INFO), is(true));
+        assertThat(rateLimiter.tryAcquire(Level.INFO), is(false));
+
+        Thread.sleep(20L);
+        assertThat(rateLimiter.tryAcquire(Level.INFO), is(true));
+    }
+
+    @Test
+    public void reportsSuppressedLogEntriesOncePerInterval() {
+        final RateLimiter rateLimiter = RateLimiter.parse("DEBUG(1, 1), INFO(1, 1)", 60000L);
+        for (int i = 0; i < 4; i++) {
+            rateLimiter.tryAcquire(Level.DEBUG);
+            rateLimiter.tryAcquire(Level.INFO);
+        }
+        rateLimiter.tryAcquire(Level.INFO);
+
+        assertThat(rateLimiter.pollSummary(false), nullValue());
+        assertThat(rateLimiter.pollSummary(true),
+                equalTo("Rate limiting suppressed 7 log entries (DEBUG: 3, INFO: 4)"));
+        assertThat(rateLimiter.pollSummary(true), nullValue());
+        assertThat(rateLimiter.getSuppressedMessages(), equalTo(7L));
+    }
+}
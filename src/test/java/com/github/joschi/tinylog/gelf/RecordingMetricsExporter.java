@@ -0,0 +1,21 @@
+package com.github.joschi.tinylog.gelf;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * {@link GelfMetricsExporter} registered in {@code src/test/resources/META-INF/services}.
+ */
+public class RecordingMetricsExporter implements GelfMetricsExporter {
+    static final List<GelfWriterMetrics> REGISTERED = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void register(final GelfWriterMetrics metrics) {
+        REGISTERED.add(metrics);
+    }
+
+    @Override
+    public void unregister(final GelfWriterMetrics metrics) {
+        REGISTERED.remove(metrics);
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class RingBufferTest {
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo() {
+        assertThat(new RingBuffer<String>(1).capacity(), equalTo(2));
+        assertThat(new RingBuffer<String>(5).capacity(), equalTo(8));
+        assertThat(new RingBuffer<String>(512).capacity(), equalTo(512));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCapacity() {
+        new RingBuffer<String>(0);
+    }
+
+    @Test
+    public void offerAndPollInOrder() {
+        final RingBuffer<String> ringBuffer = new RingBuffer<>(4);
+
+        assertThat(ringBuffer.poll(), nullValue());
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertThat(ringBuffer.offer("element-" + i), is(true));
+            }
+            assertThat(ringBuffer.offer("overflow"), is(false));
+            assertThat(ringBuffer.size(), equalTo(4));
+            for (int i = 0; i < 4; i++) {
+                assertThat(ringBuffer.poll(), equalTo("element-" + i));
+            }
+            assertThat(ringBuffer.poll(), nullValue());
+            assertThat(ringBuffer.isEmpty(), is(true));
+        }
+    }
+
+    @Test
+    public void concurrentProducers() throws InterruptedException {
+        final int producers = 4;
+        final int elementsPerProducer = 100000;
+        final RingBuffer<Long> ringBuffer = new RingBuffer<>(64);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+
+        for (int p = 0; p < producers; p++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (long i = 1; i <= elementsPerProducer; i++) {
+                        while (!ringBuffer.offer(i)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        final AtomicLong sum = new AtomicLong();
+        long received = 0;
+        while (received < (long) producers * elementsPerProducer) {
+            final Long element = ringBuffer.poll();
+            if (element == null) {
+                Thread.yield();
+            } else {
+                sum.addAndGet(element);
+                received++;
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        final long expectedSum = (long) producers * elementsPerProducer * (elementsPerProducer + 1) / 2;
+        assertThat(sum.get(), equalTo(expectedSum));
+        assertThat(ringBuffer.poll(), nullValue());
+    }
+}
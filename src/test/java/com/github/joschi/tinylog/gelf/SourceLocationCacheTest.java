@@ -0,0 +1,73 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SourceLocationCacheTest {
+    @Test
+    public void encodesSourceLocation() {
+        final SourceLocationCache cache = new SourceLocationCache(16, Integer.MAX_VALUE);
+
+        assertThat(write(cache, "my.Class", "method", "Class.java", 42), equalTo(
+                ",\"_sourceClassName\":\"my.Class\",\"_sourceMethodName\":\"method\",\"_sourceFileName\":\"Class.java\","
+                        + "\"_sourceLineNumber\":42"));
+        assertThat(write(cache, "my.Class", null, null, -1), equalTo(",\"_sourceClassName\":\"my.Class\""));
+        assertThat(write(cache, null, null, null, 7), equalTo(",\"_sourceLineNumber\":7"));
+        assertThat(write(cache, null, null, null, -1), equalTo(""));
+        assertThat(cache.cachedLocations(), equalTo(3));
+    }
+
+    @Test
+    public void cachesCallSites() {
+        final SourceLocationCache cache = new SourceLocationCache(16, Integer.MAX_VALUE);
+        write(cache, "my.Class", "method", "Class.java", 42);
+        write(cache, new String("my.Class"), "method", "Class.java", 42);
+        assertThat(cache.cachedLocations(), equalTo(1));
+
+        assertThat(write(cache, "my.Class", "method", "Class.java", 43), equalTo(
+                ",\"_sourceClassName\":\"my.Class\",\"_sourceMethodName\":\"method\",\"_sourceFileName\":\"Class.java\","
+                        + "\"_sourceLineNumber\":43"));
+        assertThat(cache.cachedLocations(), equalTo(2));
+    }
+
+    @Test
+    public void staysBounded() {
+        final SourceLocationCache cache = new SourceLocationCache(4, Integer.MAX_VALUE);
+        for (int i = 0; i < 10; i++) {
+            assertThat(write(cache, "my.Class", null, null, i), equalTo(
+                    ",\"_sourceClassName\":\"my.Class\",\"_sourceLineNumber\":" + i));
+            assertThat(cache.cachedLocations() <= 4, is(true));
+        }
+    }
+
+    @Test
+    public void truncatesNames() {
+        final SourceLocationCache cache = new SourceLocationCache(16, 4);
+        final JsonBuffer buffer = new JsonBuffer(16);
+
+        assertThat(cache.write("my.Class", "method", null, 1, buffer), is(true));
+        assertThat(new String(buffer.toByteArray(), StandardCharsets.UTF_8),
+                equalTo(",\"_sourceClassName\":\"my.C\",\"_sourceMethodName\":\"meth\",\"_sourceLineNumber\":1"));
+        assertThat(cache.write("a.B", null, null, 1, buffer), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCacheSize() {
+        new SourceLocationCache(0, Integer.MAX_VALUE);
+    }
+
+    private static String write(final SourceLocationCache cache,
+                                final String className,
+                                final String methodName,
+                                final String fileName,
+                                final int lineNumber) {
+        final JsonBuffer buffer = new JsonBuffer(16);
+        cache.write(className, methodName, fileName, lineNumber, buffer);
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
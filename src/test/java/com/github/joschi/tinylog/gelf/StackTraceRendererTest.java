@@ -0,0 +1,219 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class StackTraceRendererTest {
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    @Test
+    public void renderFrames() {
+        final Exception exception = new Exception("BOOM!");
+        exception.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.example.Foo", "bar", "Foo.java", 42),
+                new StackTraceElement("com.example.Foo", "baz", null, -2)
+        });
+
+        final String stackTrace = new StackTraceRenderer(16).render(exception);
+
+        assertThat(stackTrace, equalTo("com.example.Foo.bar(Foo.java:42)" + LINE_SEPARATOR
+                + "com.example.Foo.baz(null:-2)" + LINE_SEPARATOR));
+    }
+
+    @Test
+    public void renderCausesAndSuppressedExceptions() {
+        final IllegalStateException cause = new IllegalStateException("cause");
+        final Exception exception = new Exception("BOOM!", cause);
+        exception.addSuppressed(new IllegalArgumentException("suppressed"));
+
+        final String stackTrace = new StackTraceRenderer(16).render(exception);
+
+        assertThat(stackTrace, startsWith(getClass().getName() + ".renderCausesAndSuppressedExceptions("));
+        assertThat(stackTrace, containsString(LINE_SEPARATOR + "Caused by: java.lang.IllegalStateException: cause"
+                + LINE_SEPARATOR + getClass().getName() + ".renderCausesAndSuppressedExceptions("));
+        assertThat(stackTrace, containsString(LINE_SEPARATOR + "\tSuppressed: java.lang.IllegalArgumentException: suppressed"
+                + LINE_SEPARATOR + "\t" + getClass().getName() + ".renderCausesAndSuppressedExceptions("));
+        assertThat(stackTrace, containsString(" more" + LINE_SEPARATOR));
+    }
+
+    @Test
+    public void renderCircularReference() {
+        final Exception first = new Exception("first");
+        final Exception second = new Exception("second", first);
+        first.initCause(second);
+
+        final String stackTrace = new StackTraceRenderer(16).render(first);
+
+        assertThat(stackTrace, containsString("Caused by: [CIRCULAR REFERENCE: java.lang.Exception: first]"));
+    }
+
+    @Test
+    public void renderJson() {
+        final Exception exception = new Exception();
+        exception.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.example.Foo", "bar", "Foo\"Bar.java", 42)
+        });
+        final JsonBuffer buffer = new JsonBuffer(16);
+
+        new StackTraceRenderer(16).render(exception, buffer);
+
+        final String expected = "com.example.Foo.bar(Foo\\\"Bar.java:42)" + LINE_SEPARATOR.replace("\r", "\\r").replace("\n", "\\n");
+        assertThat(new String(buffer.array(), 0, buffer.size(), StandardCharsets.UTF_8), equalTo(expected));
+    }
+
+    @Test
+    public void frameCacheIsBounded() {
+        final StackTraceRenderer renderer = new StackTraceRenderer(4);
+        for (int i = 0; i < 100; i++) {
+            final Exception exception = new Exception();
+            exception.setStackTrace(new StackTraceElement[]{
+                    new StackTraceElement("com.example.Foo", "bar", "Foo.java", i)
+            });
+            renderer.render(exception);
+            assertTrue(renderer.cachedFrames() <= 4);
+        }
+    }
+
+    @Test
+    public void cachedTracesAreRenderedIdentically() {
+        final StackTraceRenderer renderer = new StackTraceRenderer(16, 16);
+        final StackTraceRenderer uncached = new StackTraceRenderer(16);
+        for (int i = 0; i < 3; i++) {
+            final Exception exception = new Exception("BOOM!", new IllegalStateException("cause"));
+            exception.setStackTrace(new StackTraceElement[]{
+                    new StackTraceElement("com.example.Foo", "bar", "Foo.java", 42)
+            });
+
+            assertThat(renderer.render(exception), equalTo(uncached.render(exception)));
+
+            final JsonBuffer cachedJson = new JsonBuffer(16);
+            cachedJson.writeByte('x');
+            renderer.render(exception, cachedJson);
+            final JsonBuffer json = new JsonBuffer(16);
+            json.writeByte('x');
+            uncached.render(exception, json);
+            assertThat(new String(cachedJson.array(), 0, cachedJson.size(), StandardCharsets.UTF_8),
+                    equalTo(new String(json.array(), 0, json.size(), StandardCharsets.UTF_8)));
+        }
+        assertThat(renderer.cachedTraces(), equalTo(1));
+    }
+
+    @Test
+    public void traceCacheDistinguishesCauses() {
+        final StackTraceRenderer renderer = new StackTraceRenderer(16, 16);
+        final StackTraceElement[] trace = {new StackTraceElement("com.example.Foo", "bar", "Foo.java", 42)};
+        final Exception first = new Exception("BOOM!", new IllegalStateException("first"));
+        first.setStackTrace(trace);
+        final Exception second = new Exception("BOOM!", new IllegalStateException("second"));
+        second.setStackTrace(trace);
+
+        assertThat(renderer.render(first), containsString("IllegalStateException: first"));
+        assertThat(renderer.render(second), containsString("IllegalStateException: second"));
+        assertThat(renderer.cachedTraces(), equalTo(2));
+    }
+
+    @Test
+    public void traceCacheIgnoresMessageOfRootThrowable() {
+        final StackTraceRenderer renderer = new StackTraceRenderer(16, 16);
+        final StackTraceElement[] trace = {new StackTraceElement("com.example.Foo", "bar", "Foo.java", 42)};
+        final Exception first = new Exception("Order 1 not found");
+        first.setStackTrace(trace);
+        final Exception second = new Exception("Order 2 not found");
+        second.setStackTrace(trace);
+
+        assertThat(renderer.render(first), equalTo(renderer.render(second)));
+        assertThat(renderer.cachedTraces(), equalTo(1));
+    }
+
+    @Test
+    public void traceCacheIsBounded() {
+        final StackTraceRenderer renderer = new StackTraceRenderer(16, 4);
+        for (int i = 0; i < 100; i++) {
+            final Exception exception = new Exception("BOOM!", new IllegalStateException("cause " + i));
+            renderer.render(exception);
+            assertTrue(renderer.cachedTraces() <= 4);
+        }
+    }
+
+    @Test
+    public void traceCacheHandlesCircularReferences() {
+        final StackTraceRenderer renderer = new StackTraceRenderer(16, 16);
+        final Exception first = new Exception("first");
+        final Exception second = new Exception("second", first);
+        first.initCause(second);
+
+        assertThat(renderer.render(first), containsString("Caused by: [CIRCULAR REFERENCE: java.lang.Exception: first]"));
+        assertThat(renderer.render(first), equalTo(new StackTraceRenderer(16).render(first)));
+    }
+
+    @Test
+    public void filterFrames() {
+        final Exception exception = new Exception("BOOM!");
+        exception.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.example.Foo", "bar", "Foo.java", 1),
+                new StackTraceElement("sun.reflect.NativeMethodAccessorImpl", "invoke0", null, -2),
+                new StackTraceElement("java.lang.reflect.Method", "invoke", "Method.java", 498),
+                new StackTraceElement("com.example.Foo", "main", "Foo.java", 2),
+                new StackTraceElement("sun.reflect.NativeMethodAccessorImpl", "invoke0", null, -2)
+        });
+        final StackTraceRenderer renderer = new StackTraceRenderer(16, 0, 0, 0,
+                PackagePrefixFilter.of("sun.reflect.", "java.lang.reflect."));
+
+        assertThat(renderer.render(exception), equalTo("com.example.Foo.bar(Foo.java:1)" + LINE_SEPARATOR
+                + "... 2 frames omitted" + LINE_SEPARATOR
+                + "com.example.Foo.main(Foo.java:2)" + LINE_SEPARATOR
+                + "... 1 frames omitted" + LINE_SEPARATOR));
+    }
+
+    @Test
+    public void limitStackDepth() {
+        final Exception cause = new IllegalStateException("cause");
+        cause.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.example.Bar", "a", "Bar.java", 1),
+                new StackTraceElement("com.example.Bar", "b", "Bar.java", 2),
+                new StackTraceElement("com.example.Bar", "c", "Bar.java", 3)
+        });
+        final Exception exception = new Exception("BOOM!", cause);
+        exception.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.example.Foo", "a", "Foo.java", 1),
+                new StackTraceElement("com.example.Foo", "b", "Foo.java", 2),
+                new StackTraceElement("com.example.Foo", "c", "Foo.java", 3)
+        });
+        final StackTraceRenderer renderer = new StackTraceRenderer(16, 0, 2, 0, PackagePrefixFilter.none());
+
+        assertThat(renderer.render(exception), equalTo("com.example.Foo.a(Foo.java:1)" + LINE_SEPARATOR
+                + "com.example.Foo.b(Foo.java:2)" + LINE_SEPARATOR
+                + "... 1 frames omitted" + LINE_SEPARATOR
+                + "Caused by: java.lang.IllegalStateException: cause" + LINE_SEPARATOR
+                + "com.example.Bar.a(Bar.java:1)" + LINE_SEPARATOR
+                + "com.example.Bar.b(Bar.java:2)" + LINE_SEPARATOR
+                + "... 1 frames omitted" + LINE_SEPARATOR));
+    }
+
+    @Test
+    public void limitCauseDepth() {
+        final Exception root = new IllegalArgumentException("root");
+        final Exception middle = new IllegalStateException("middle", root);
+        final Exception cause = new RuntimeException("cause", middle);
+        final Exception exception = new Exception("BOOM!", cause);
+        final StackTraceRenderer renderer = new StackTraceRenderer(16, 0, 0, 1, PackagePrefixFilter.none());
+
+        final String stackTrace = renderer.render(exception);
+
+        assertThat(stackTrace, containsString("Caused by: java.lang.RuntimeException: cause"));
+        assertThat(stackTrace, containsString(LINE_SEPARATOR + "... 2 causes omitted" + LINE_SEPARATOR));
+        assertThat(stackTrace.contains("middle"), equalTo(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidStackDepth() {
+        new StackTraceRenderer(16, 0, -1, 0, PackagePrefixFilter.none());
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.junit.Test;
+import org.pmw.tinylog.Level;
+import org.pmw.tinylog.LogEntry;
+
+import java.util.Date;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class StartupBufferTest {
+    @Test
+    public void buffersUntilDrained() {
+        final OverflowPolicy overflowPolicy = OverflowPolicy.block();
+        final StartupBuffer buffer = new StartupBuffer(2, overflowPolicy);
+        final LogEntry first = logEntry("first");
+        final LogEntry second = logEntry("second");
+
+        assertThat(buffer.offer(first), is(true));
+        assertThat(buffer.offer(second), is(true));
+        assertThat(buffer.offer(logEntry("third")), is(true));
+        assertThat(buffer.size(), equalTo(2));
+        assertThat(overflowPolicy.getDroppedMessages(), equalTo(1L));
+
+        assertThat(buffer.poll(), sameInstance(first));
+        assertThat(buffer.offer(logEntry("fourth")), is(true));
+        assertThat(buffer.poll(), sameInstance(second));
+        assertThat(buffer.poll().getMessage(), equalTo("fourth"));
+        assertThat(buffer.poll(), nullValue());
+
+        assertThat(buffer.offer(logEntry("fifth")), is(false));
+        assertThat(buffer.size(), equalTo(0));
+    }
+
+    @Test
+    public void discardsEntries() {
+        final OverflowPolicy overflowPolicy = OverflowPolicy.block();
+        final StartupBuffer buffer = new StartupBuffer(4, overflowPolicy);
+        buffer.offer(logEntry("first"));
+        buffer.offer(logEntry("second"));
+
+        assertThat(buffer.discard(), equalTo(2));
+        assertThat(overflowPolicy.getDroppedMessages(), equalTo(2L));
+        assertThat(buffer.offer(logEntry("third")), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCapacity() {
+        new StartupBuffer(0, OverflowPolicy.block());
+    }
+
+    private static LogEntry logEntry(final String message) {
+        return new LogEntry(new Date(), null, null, null, null, null, -1, Level.INFO, message, null);
+    }
+}
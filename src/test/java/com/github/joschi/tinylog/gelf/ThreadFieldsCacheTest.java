@@ -0,0 +1,55 @@
+package com.github.joschi.tinylog.gelf;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class ThreadFieldsCacheTest {
+    @Test
+    public void encodesThreadFields() {
+        final Thread thread = new Thread(new ThreadGroup("my\"Group"), "my\"Thread");
+        thread.setPriority(3);
+        final ThreadFieldsCache cache = new ThreadFieldsCache(Integer.MAX_VALUE);
+        final JsonBuffer buffer = new JsonBuffer(16);
+
+        assertThat(cache.write(thread, buffer), is(false));
+        assertThat(new String(buffer.toByteArray(), StandardCharsets.UTF_8),
+                equalTo(",\"_threadName\":\"my\\\"Thread\",\"_threadGroup\":\"my\\\"Group\",\"_threadPriority\":3"));
+    }
+
+    @Test
+    public void reusesFragmentUntilThreadChanges() {
+        final Thread thread = new Thread("Test");
+        final ThreadFieldsCache cache = new ThreadFieldsCache(Integer.MAX_VALUE);
+
+        final byte[] fragment = cache.get(thread).getFragment();
+        assertThat(cache.get(thread).getFragment(), sameInstance(fragment));
+
+        thread.setName("Renamed");
+        final byte[] renamed = cache.get(thread).getFragment();
+        assertThat(renamed, not(sameInstance(fragment)));
+        assertThat(new String(renamed, StandardCharsets.UTF_8).contains("\"Renamed\""), is(true));
+        assertThat(cache.get(thread).getFragment(), sameInstance(renamed));
+
+        thread.setPriority(Thread.MIN_PRIORITY);
+        assertThat(new String(cache.get(thread).getFragment(), StandardCharsets.UTF_8)
+                .endsWith("\"_threadPriority\":1"), is(true));
+    }
+
+    @Test
+    public void truncatesNames() {
+        final Thread thread = new Thread(new ThreadGroup("Group"), "LongThreadName");
+        final ThreadFieldsCache cache = new ThreadFieldsCache(4);
+        final JsonBuffer buffer = new JsonBuffer(16);
+
+        assertThat(cache.write(thread, buffer), is(true));
+        assertThat(new String(buffer.toByteArray(), StandardCharsets.UTF_8),
+                equalTo(",\"_threadName\":\"Long\",\"_threadGroup\":\"Grou\",\"_threadPriority\":5"));
+    }
+}